@@ -0,0 +1,168 @@
+import { GCProfiler } from "v8";
+
+/**
+ * Result of a single benchmark, machine-readable for comparison against a baseline.
+ */
+export interface BenchResult {
+    name: string;
+    /** Measured operations. */
+    ops: number;
+    opsPerSec: number;
+    /** Per-operation time percentiles, in milliseconds. */
+    p50: number;
+    p90: number;
+    p99: number;
+    /** Estimated bytes allocated per operation, from GC statistics. */
+    allocatedPerOp: number;
+}
+
+export interface BenchOptions {
+    /** Minimum measuring time, in milliseconds. */
+    time?: number;
+    /** Warmup time before measuring, in milliseconds. */
+    warmup?: number;
+}
+
+const percentile = (sorted: number[], p: number): number =>
+    sorted[Math.min(sorted.length - 1, Math.floor((sorted.length - 1) * p))];
+
+const runFor = (fn: () => unknown, time: number, samples?: number[]) => {
+    let ops = 0;
+    const start = performance.now();
+    let last = start;
+    while (last - start < time) {
+        fn();
+        ops++;
+
+        const now = performance.now();
+        samples?.push(now - last);
+        last = now;
+    }
+    return { ops, elapsed: last - start };
+};
+
+const runForAsync = async (fn: () => Promise<unknown>, time: number, samples?: number[]) => {
+    let ops = 0;
+    const start = performance.now();
+    let last = start;
+    while (last - start < time) {
+        await fn();
+        ops++;
+
+        const now = performance.now();
+        samples?.push(now - last);
+        last = now;
+    }
+    return { ops, elapsed: last - start };
+};
+
+const heapUsed = (stats: { heapStatistics: { usedHeapSize: number } }) => stats.heapStatistics.usedHeapSize;
+
+// starts profiling after a forced collection if exposed, the returned function stops it with the allocated bytes
+const startProfile = (): (() => number) => {
+    (globalThis as { gc?: () => void }).gc?.();
+    const profiler = new GCProfiler();
+    const heapBefore = process.memoryUsage().heapUsed;
+    profiler.start();
+
+    return () => {
+        const gcStats = profiler.stop();
+        const heapAfter = process.memoryUsage().heapUsed;
+
+        // bytes freed by every collection during the run, plus whatever is still on the heap after it
+        let allocated = heapAfter - heapBefore;
+        for (const stat of gcStats?.statistics ?? []) {
+            allocated += heapUsed(stat.beforeGC) - heapUsed(stat.afterGC);
+        }
+        return allocated;
+    };
+};
+
+const toResult = (name: string, ops: number, elapsed: number, samples: number[], allocated: number): BenchResult => {
+    samples.sort((a, b) => a - b);
+    return {
+        name,
+        ops,
+        opsPerSec: (ops / elapsed) * 1000,
+        p50: percentile(samples, 0.5),
+        p90: percentile(samples, 0.9),
+        p99: percentile(samples, 0.99),
+        allocatedPerOp: Math.max(0, allocated / ops),
+    };
+};
+
+/**
+ * Measures a function, reporting throughput, latency percentiles and allocations.
+ *
+ * @param name - The benchmark name, the key for baseline comparison
+ * @param fn - The operation to measure
+ * @param options - Optional timing options
+ * @returns The result
+ */
+export const bench = (name: string, fn: () => unknown, options: BenchOptions = {}): BenchResult => {
+    const { time = 1000, warmup = 250 } = options;
+    runFor(fn, warmup);
+
+    const samples: number[] = [];
+    const stop = startProfile();
+    const { ops, elapsed } = runFor(fn, time, samples);
+    return toResult(name, ops, elapsed, samples, stop());
+};
+
+/**
+ * Measures an asynchronous function, awaiting each operation before starting the next.
+ *
+ * @param name - The benchmark name, the key for baseline comparison
+ * @param fn - The operation to measure
+ * @param options - Optional timing options
+ * @returns The result
+ */
+export const benchAsync = async (
+    name: string,
+    fn: () => Promise<unknown>,
+    options: BenchOptions = {}
+): Promise<BenchResult> => {
+    const { time = 1000, warmup = 250 } = options;
+    await runForAsync(fn, warmup);
+
+    const samples: number[] = [];
+    const stop = startProfile();
+    const { ops, elapsed } = await runForAsync(fn, time, samples);
+    return toResult(name, ops, elapsed, samples, stop());
+};
+
+/**
+ * A benchmark whose throughput dropped compared to the baseline.
+ */
+export interface Regression {
+    name: string;
+    baseline: number;
+    current: number;
+    /** Relative change of operations per second, negative for slowdowns. */
+    change: number;
+}
+
+/**
+ * Compares results against a baseline run by name.
+ *
+ * @param results - The current results
+ * @param baseline - The baseline results
+ * @param threshold - The tolerated relative slowdown, e.g. 0.1 for 10%
+ * @returns The regressions
+ */
+export const compare = (results: BenchResult[], baseline: BenchResult[], threshold: number): Regression[] => {
+    const baselineByName = new Map(baseline.map((r) => [r.name, r]));
+    const regressions: Regression[] = [];
+    for (const result of results) {
+        const base = baselineByName.get(result.name);
+        if (!base) {
+            continue;
+        }
+
+        const change = result.opsPerSec / base.opsPerSec - 1;
+        if (change < -threshold) {
+            regressions.push({ name: result.name, baseline: base.opsPerSec, current: result.opsPerSec, change });
+        }
+    }
+    return regressions;
+};
@@ -0,0 +1,246 @@
+import { parser } from "@run-slicer/lezer-java";
+import { readdirSync, readFileSync, statSync, writeFileSync } from "fs";
+import { join } from "path";
+import { parseArgs } from "util";
+import {
+    bufferSource,
+    createExternalSymbolIndex,
+    createTypeReferenceResolver,
+    createWorkspace,
+    ExternalTypeReference,
+    parseDeclarations,
+    parseUnit,
+    readClassIndex,
+} from "../src/index.js";
+import { bench, benchAsync, BenchOptions, BenchResult, compare } from "./harness.js";
+
+// usage: pnpm bench [--filter <substring>] [--time <ms>] [--out <file>] [--baseline <file>] [--threshold <ratio>]
+const { values: args } = parseArgs({
+    options: {
+        filter: { type: "string" },
+        time: { type: "string" },
+        out: { type: "string" },
+        baseline: { type: "string" },
+        threshold: { type: "string", default: "0.1" },
+    },
+});
+
+const options: BenchOptions = { time: args.time ? Number(args.time) : undefined };
+
+const listJavaFiles = (dir: string): string[] =>
+    readdirSync(dir).flatMap((name) => {
+        const path = join(dir, name);
+        return statSync(path).isDirectory() ? listJavaFiles(path) : path.endsWith(".java") ? [path] : [];
+    });
+
+// a file with `classes` classes of `members` fields and methods each, referencing imported and declared types
+const synthesize = (classes: number, members: number): string => {
+    const lines = ["package bench.synthetic;", "", "import java.util.*;", "import java.io.IOException;", ""];
+    for (let c = 0; c < classes; c++) {
+        lines.push(`class Synthetic${c}<T extends Comparable<T>> {`);
+        for (let m = 0; m < members; m++) {
+            lines.push(`    private Map<String, List<Synthetic${(c + 1) % classes}<T>>> field${m};`);
+            lines.push(`    public List<T> method${m}(Set<Integer> input, T value) throws IOException {`);
+            lines.push(`        ArrayList<T> result = new ArrayList<>();`);
+            lines.push(`        for (Integer i : input) { result.add(value); }`);
+            lines.push(`        return result;`);
+            lines.push(`    }`);
+        }
+        lines.push("}");
+    }
+    return lines.join("\n");
+};
+
+const JDK_TYPES: ExternalTypeReference[] = [
+    ["java.lang", "String"],
+    ["java.lang", "Integer"],
+    ["java.lang", "Comparable"],
+    ["java.lang", "Object"],
+    ["java.util", "List"],
+    ["java.util", "ArrayList"],
+    ["java.util", "Map"],
+    ["java.util", "Set"],
+    ["java.io", "IOException"],
+].map(([packageName, name]) => ({
+    name,
+    qualifiedName: `${packageName}.${name}`,
+    packageName,
+    moduleName: "java.base",
+}));
+
+// unrelated filler references, placed before the real ones so that linear scans would pay for them
+const externalRefs = (size: number): ExternalTypeReference[] => [
+    ...Array.from({ length: size }, (_, i) => ({
+        name: `Filler${i}`,
+        qualifiedName: `bench.filler.p${i % 1000}.Filler${i}`,
+        packageName: `bench.filler.p${i % 1000}`,
+        moduleName: "bench.filler",
+    })),
+    ...JDK_TYPES,
+];
+
+const inputs = [
+    ...listJavaFiles("samples").map((path) => ({ name: path, source: readFileSync(path, "utf-8") })),
+    { name: "synthetic-10x10", source: synthesize(10, 10) },
+    { name: "synthetic-100x50", source: synthesize(100, 50) },
+];
+
+const results: BenchResult[] = [];
+const selected = (name: string) => !args.filter || name.includes(args.filter);
+const record = (result: BenchResult) => {
+    results.push(result);
+    console.error(
+        `${result.name.padEnd(64)} ${result.opsPerSec.toFixed(1).padStart(12)} ops/s` +
+            `  p50 ${result.p50.toFixed(3)}ms  p99 ${result.p99.toFixed(3)}ms` +
+            `  ${(result.allocatedPerOp / 1024).toFixed(1)} KiB/op`
+    );
+};
+const run = (name: string, fn: () => unknown) => {
+    if (selected(name)) {
+        record(bench(name, fn, options));
+    }
+};
+const runAsync = async (name: string, fn: () => Promise<unknown>) => {
+    if (selected(name)) {
+        record(await benchAsync(name, fn, options));
+    }
+};
+
+for (const input of inputs) {
+    const tree = parser.parse(input.source);
+    run(`parseUnit ${input.name}`, () => parseUnit(tree, input.source));
+}
+
+// the full path of indexing a file against the declaration-only one
+for (const input of inputs) {
+    run(`parse+parseUnit ${input.name}`, () => parseUnit(parser.parse(input.source), input.source));
+    run(`parseDeclarations ${input.name}`, () => parseDeclarations(parser, input.source));
+}
+
+// the declaration-only path has to stay several times faster on files dominated by method bodies
+const MIN_DECLARATIONS_SPEEDUP = 3;
+const full = results.find((r) => r.name === "parse+parseUnit synthetic-100x50");
+const declarationsOnly = results.find((r) => r.name === "parseDeclarations synthetic-100x50");
+if (full && declarationsOnly) {
+    const speedup = declarationsOnly.opsPerSec / full.opsPerSec;
+    console.error(`parseDeclarations speedup over parse+parseUnit: ${speedup.toFixed(2)}x`);
+    if (speedup < MIN_DECLARATIONS_SPEEDUP) {
+        console.error(`regression: parseDeclarations speedup below ${MIN_DECLARATIONS_SPEEDUP}x`);
+        process.exitCode = 1;
+    }
+}
+
+for (const size of [0, 10_000, 200_000]) {
+    const index = createExternalSymbolIndex(externalRefs(size));
+    for (const input of inputs) {
+        const unit = parseUnit(parser.parse(input.source), input.source);
+        run(`resolveAll ${input.name} refs=${size}`, () => createTypeReferenceResolver(unit, index).resolveAll());
+    }
+}
+
+for (const input of inputs) {
+    const unit = parseUnit(parser.parse(input.source), input.source);
+    const resolver = createTypeReferenceResolver(unit, createExternalSymbolIndex(JDK_TYPES));
+
+    // deterministic spread of offsets over the file
+    const offsets = Array.from({ length: 256 }, (_, i) => Math.floor((input.source.length * (i + 0.5)) / 256));
+    run(`resolveAt ${input.name} x${offsets.length}`, () => {
+        for (const offset of offsets) {
+            resolver.resolveAt(offset);
+        }
+    });
+}
+
+// usages are resolved on the first query after a change rather than when units are set,
+// so the first query pays for resolving every unit set since, the ones after it are answered from the index
+const workspaceUnits = Array.from({ length: 100 }, (_, i) => {
+    const source = synthesize(10, 10).replace("package bench.synthetic;", `package bench.synthetic${i};`);
+    return { id: `bench/synthetic${i}/Synthetic.java`, unit: parseUnit(parser.parse(source), source) };
+});
+const populateWorkspace = () => {
+    const workspace = createWorkspace(JDK_TYPES);
+    for (const { id, unit } of workspaceUnits) {
+        workspace.set(id, unit);
+    }
+    return workspace;
+};
+
+run(`workspace set x${workspaceUnits.length}`, populateWorkspace);
+run(`workspace set+first usages x${workspaceUnits.length}`, () => populateWorkspace().usages.usages("java.util.List"));
+
+const warmWorkspace = populateWorkspace();
+warmWorkspace.usages.usages("java.util.List");
+run(`workspace usages x${workspaceUnits.length}`, () => warmWorkspace.usages.usages("java.util.List"));
+
+// a jar of `classes` stored class files of `classSize` bytes each, a quarter of them nested, 100 per package
+const synthesizeJar = (jar: number, classes: number, classSize: number): Uint8Array => {
+    const encoder = new TextEncoder();
+    const names = Array.from({ length: classes }, (_, i) =>
+        encoder.encode(`bench/jar${jar}/pkg${Math.floor(i / 100)}/Class${i}${i % 4 === 0 ? "$Inner" : ""}.class`)
+    );
+    const localSize = names.reduce((sum, name) => sum + 30 + name.length + classSize, 0);
+    const centralSize = names.reduce((sum, name) => sum + 46 + name.length, 0);
+
+    const bytes = new Uint8Array(localSize + centralSize + 22);
+    const data = new DataView(bytes.buffer);
+    let local = 0;
+    let central = localSize;
+    for (const name of names) {
+        data.setUint32(local, 0x04034b50, true);
+        data.setUint32(local + 18, classSize, true);
+        data.setUint32(local + 22, classSize, true);
+        data.setUint16(local + 26, name.length, true);
+        bytes.set(name, local + 30);
+
+        data.setUint32(central, 0x02014b50, true);
+        data.setUint32(central + 20, classSize, true);
+        data.setUint32(central + 24, classSize, true);
+        data.setUint16(central + 28, name.length, true);
+        data.setUint32(central + 42, local, true);
+        bytes.set(name, central + 46);
+
+        local += 30 + name.length + classSize;
+        central += 46 + name.length;
+    }
+
+    data.setUint32(central, 0x06054b50, true);
+    data.setUint16(central + 8, classes, true);
+    data.setUint16(central + 10, classes, true);
+    data.setUint32(central + 12, centralSize, true);
+    data.setUint32(central + 16, localSize, true);
+    return bytes;
+};
+
+// indexing a classpath has to stay well under a second, it only reads the central directories
+const MAX_CLASSPATH_MS = 500;
+const classPathName = "readClassIndex classpath-300MB";
+if (selected(classPathName)) {
+    const classPath = Array.from({ length: 30 }, (_, i) => synthesizeJar(i, 5000, 2000));
+    const total = classPath.reduce((sum, jar) => sum + jar.length, 0);
+    console.error(`classpath: ${classPath.length} jars, ${(total / 1e6).toFixed(0)} MB`);
+
+    await runAsync(classPathName, () => Promise.all(classPath.map((jar) => readClassIndex(bufferSource(jar)))));
+    const indexed = results.find((r) => r.name === classPathName);
+    if (indexed.p50 > MAX_CLASSPATH_MS) {
+        console.error(`regression: classpath indexing above ${MAX_CLASSPATH_MS}ms`);
+        process.exitCode = 1;
+    }
+}
+
+const report = JSON.stringify({ node: process.version, date: new Date().toISOString(), results }, null, 4);
+if (args.out) {
+    writeFileSync(args.out, report + "\n");
+} else {
+    console.log(report);
+}
+
+if (args.baseline) {
+    const baseline: BenchResult[] = JSON.parse(readFileSync(args.baseline, "utf-8")).results;
+    const regressions = compare(results, baseline, Number(args.threshold));
+    for (const r of regressions) {
+        console.error(`regression: ${r.name} ${r.baseline.toFixed(1)} -> ${r.current.toFixed(1)} ops/s`);
+    }
+    if (regressions.length > 0) {
+        process.exitCode = 1;
+    }
+}
@@ -0,0 +1,170 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readFileSync } from "fs";
+import { mkdir, mkdtemp, readdir, rm } from "fs/promises";
+import { tmpdir } from "os";
+import { join } from "path";
+import {
+    AnalysisCacheStore,
+    createAnalysisCache,
+    deserializeSummary,
+    hashText,
+    serializeSummary,
+} from "./cache.js";
+import { createFileCacheStore } from "./node.js";
+import { summarizeUnit } from "./summary.js";
+import { parseUnit } from "./unit.js";
+
+const createMemoryStore = (): AnalysisCacheStore & { entries: Map<string, string> } => {
+    const entries = new Map<string, string>();
+    return {
+        entries,
+        get: async (key) => entries.get(key) ?? null,
+        set: async (key, value) => {
+            entries.set(key, value);
+        },
+        delete: async (key) => {
+            entries.delete(key);
+        },
+    };
+};
+
+describe("Analysis Cache", () => {
+    const source = readFileSync("samples/sample/inheritance/Diamond.java", "utf-8");
+    const summary = summarizeUnit(parseUnit(parser.parse(source), source));
+
+    describe("hashText", () => {
+        it("should be stable and content sensitive", () => {
+            expect(hashText(source)).to.equal(hashText(source));
+            expect(hashText(source)).to.have.lengthOf(16);
+            expect(hashText(source)).to.not.equal(hashText(source + " "));
+        });
+    });
+
+    describe("serialization", () => {
+        it("should round-trip summaries", () => {
+            const restored = deserializeSummary(serializeSummary(summary));
+
+            expect(restored?.references).to.be.instanceOf(Int32Array);
+            expect(restored).to.deep.equal(summary);
+        });
+
+        it("should round-trip supertypes and modules", () => {
+            const classSource = "package test;\n\nclass A<T> extends Base<T> implements Runnable, java.io.Closeable {}";
+            const moduleSource = "module test.app { requires transitive test.api; exports test; }";
+            const classSummary = summarizeUnit(parseUnit(parser.parse(classSource), classSource));
+            const moduleSummary = summarizeUnit(parseUnit(parser.parse(moduleSource), moduleSource));
+
+            expect(classSummary.types[0]).to.include({ superclass: "Base" });
+            expect(classSummary.types[0].interfaces).to.deep.equal(["Runnable", "java.io.Closeable"]);
+            expect(classSummary.module).to.be.null;
+            expect(moduleSummary.module).to.deep.equal({
+                name: "test.app",
+                exports: ["test"],
+                requiresTransitive: ["test.api"],
+            });
+
+            expect(deserializeSummary(serializeSummary(classSummary))).to.deep.equal(classSummary);
+            expect(deserializeSummary(serializeSummary(moduleSummary))).to.deep.equal(moduleSummary);
+        });
+
+        it("should reject malformed summaries", () => {
+            expect(deserializeSummary("{")).to.be.null;
+            expect(deserializeSummary("null")).to.be.null;
+
+            const invalid = { ...JSON.parse(serializeSummary(summary)), types: [{}] };
+            expect(deserializeSummary(JSON.stringify(invalid))).to.be.null;
+        });
+    });
+
+    describe("createAnalysisCache", () => {
+        it("should miss, then hit", async () => {
+            const cache = createAnalysisCache(createMemoryStore(), "1.0.0");
+
+            expect(await cache.get(source)).to.be.null;
+            await cache.set(source, summary);
+            expect(await cache.get(source)).to.deep.equal(summary);
+
+            expect(cache.stats).to.deep.equal({ hits: 1, misses: 1, stale: 0, corrupt: 0 });
+        });
+
+        it("should key by source and parser version", async () => {
+            const store = createMemoryStore();
+            await createAnalysisCache(store, "1.0.0").set(source, summary);
+
+            const other = createAnalysisCache(store, "2.0.0");
+            expect(await other.get(source)).to.be.null;
+
+            const same = createAnalysisCache(store, "1.0.0");
+            expect(await same.get(source + "\n")).to.be.null;
+            expect(await same.get(source)).to.not.be.null;
+        });
+
+        it("should detect and delete corrupt entries", async () => {
+            const store = createMemoryStore();
+            const cache = createAnalysisCache(store, "1.0.0");
+            await cache.set(source, summary);
+
+            const [key, value] = [...store.entries][0];
+            store.entries.set(key, value.slice(0, value.length / 2));
+
+            expect(await cache.get(source)).to.be.null;
+            expect(cache.stats.corrupt).to.equal(1);
+            expect(store.entries.size).to.equal(0);
+        });
+
+        it("should detect and delete stale entries", async () => {
+            const store = createMemoryStore();
+            const cache = createAnalysisCache(store, "1.0.0");
+            await cache.set(source, summary);
+
+            const [key, value] = [...store.entries][0];
+            store.entries.set(key, JSON.stringify({ ...JSON.parse(value), sourceLength: 0 }));
+
+            expect(await cache.get(source)).to.be.null;
+            expect(cache.stats.stale).to.equal(1);
+            expect(store.entries.size).to.equal(0);
+        });
+    });
+
+    describe("createFileCacheStore", () => {
+        let directory: string;
+
+        before(async () => {
+            directory = await mkdtemp(join(tmpdir(), "laser-cache-"));
+        });
+
+        after(async () => {
+            await rm(directory, { recursive: true, force: true });
+        });
+
+        it("should persist entries across cache instances", async () => {
+            const store = createFileCacheStore(join(directory, "nested"));
+            await createAnalysisCache(store, "1.0.0").set(source, summary);
+
+            const warm = createAnalysisCache(createFileCacheStore(join(directory, "nested")), "1.0.0");
+            expect(await warm.get(source)).to.deep.equal(summary);
+            expect(await readdir(join(directory, "nested"))).to.have.lengthOf(1);
+        });
+
+        it("should treat missing entries as misses", async () => {
+            const store = createFileCacheStore(directory);
+
+            expect(await store.get("missing")).to.be.null;
+            await store.delete("missing");
+        });
+
+        it("should pass on read errors", async () => {
+            const store = createFileCacheStore(directory);
+            await mkdir(join(directory, "unreadable.json"));
+
+            let error: unknown = null;
+            try {
+                await store.get("unreadable");
+            } catch (e) {
+                error = e;
+            }
+            expect(error).to.have.property("code", "EISDIR");
+        });
+    });
+});
@@ -0,0 +1,235 @@
+import { ModuleInfo } from "./modules.js";
+import { ImportSummary, TypeSummary, UnitSummary } from "./summary.js";
+
+/**
+ * Version of the cache entry format, entries written by other versions are treated as stale.
+ */
+export const CACHE_FORMAT_VERSION = 3;
+
+/**
+ * Hashes a string into 16 hex characters.
+ *
+ * This is a fast non-cryptographic hash (two 32-bit lanes, 64 bits total), good enough for cache keys.
+ *
+ * @param text - The text to hash
+ * @returns The hash
+ */
+export const hashText = (text: string): string => {
+    let h1 = 0xdeadbeef;
+    let h2 = 0x41c6ce57;
+    for (let i = 0; i < text.length; i++) {
+        const ch = text.charCodeAt(i);
+        h1 = Math.imul(h1 ^ ch, 2654435761);
+        h2 = Math.imul(h2 ^ ch, 1597334677);
+    }
+    h1 = Math.imul(h1 ^ (h1 >>> 16), 2246822507) ^ Math.imul(h2 ^ (h2 >>> 13), 3266489909);
+    h2 = Math.imul(h2 ^ (h2 >>> 16), 2246822507) ^ Math.imul(h1 ^ (h1 >>> 13), 3266489909);
+
+    return (h2 >>> 0).toString(16).padStart(8, "0") + (h1 >>> 0).toString(16).padStart(8, "0");
+};
+
+/**
+ * Key-value storage of serialized cache entries, e.g. a directory of files.
+ */
+export interface AnalysisCacheStore {
+    /** Reads an entry, null if there is none, rejecting if the storage fails rather than reporting a miss. */
+    get(key: string): Promise<string | null>;
+    set(key: string, value: string): Promise<void>;
+    delete(key: string): Promise<void>;
+}
+
+/**
+ * Cache lookup counters.
+ */
+export interface AnalysisCacheStats {
+    hits: number;
+    misses: number;
+    /** Entries written for another source, parser or format version. */
+    stale: number;
+    /** Entries that couldn't be read back. */
+    corrupt: number;
+}
+
+/**
+ * Cache of unit summaries, keyed by source content and parser version.
+ */
+export interface AnalysisCache {
+    /** The lookup counters since the cache was created. */
+    readonly stats: AnalysisCacheStats;
+
+    /**
+     * Looks up the summary of a source file.
+     *
+     * Stale and corrupt entries are deleted and reported as misses, storage failures are passed on.
+     *
+     * @param source - The source code
+     * @returns The cached summary or null
+     */
+    get(source: string): Promise<UnitSummary | null>;
+
+    /**
+     * Stores the summary of a source file.
+     *
+     * @param source - The source code the summary was made from
+     * @param summary - The summary
+     */
+    set(source: string, summary: UnitSummary): Promise<void>;
+}
+
+interface CacheEntry {
+    format: number;
+    parserVersion: string;
+    sourceHash: string;
+    sourceLength: number;
+    checksum: string;
+    summary: string;
+}
+
+// summary as parsed from JSON, the reference table is a plain array
+type SerializedSummary = Omit<UnitSummary, "references"> & { references: number[] };
+
+const IMPORT_KINDS = new Set<string>(["type", "wildcard", "static", "module"]);
+const TYPE_KINDS = new Set<string>(["class", "interface", "enum", "annotation", "module", "record"]);
+
+const isImport = (value: ImportSummary): boolean =>
+    IMPORT_KINDS.has(value?.kind) &&
+    typeof value.importedName === "string" &&
+    Number.isInteger(value.from) &&
+    Number.isInteger(value.to);
+
+const isStringArray = (value: unknown): boolean =>
+    Array.isArray(value) && value.every((item) => typeof item === "string");
+
+const isType = (value: TypeSummary): boolean =>
+    TYPE_KINDS.has(value?.kind) &&
+    typeof value.name === "string" &&
+    typeof value.qualifiedName === "string" &&
+    isStringArray(value.typeParameters) &&
+    Number.isInteger(value.from) &&
+    Number.isInteger(value.to) &&
+    (value.superclass === null || typeof value.superclass === "string") &&
+    isStringArray(value.interfaces) &&
+    isStringArray(value.permits) &&
+    typeof value.local === "boolean";
+
+const isModule = (value: ModuleInfo | null): boolean =>
+    value === null ||
+    (typeof value?.name === "string" && isStringArray(value.exports) && isStringArray(value.requiresTransitive));
+
+/**
+ * Serializes a unit summary to a string.
+ *
+ * @param summary - The summary
+ * @returns The serialized summary
+ */
+export const serializeSummary = (summary: UnitSummary): string => {
+    const value: SerializedSummary = { ...summary, references: Array.from(summary.references) };
+    return JSON.stringify(value);
+};
+
+/**
+ * Deserializes a unit summary, validating its shape.
+ *
+ * @param data - The serialized summary
+ * @returns The summary or null, if the data isn't a valid summary
+ */
+export const deserializeSummary = (data: string): UnitSummary | null => {
+    let value: SerializedSummary;
+    try {
+        value = JSON.parse(data);
+    } catch {
+        return null;
+    }
+
+    if (
+        !value ||
+        (value.packageName !== null && typeof value.packageName !== "string") ||
+        !Array.isArray(value.imports) ||
+        !value.imports.every(isImport) ||
+        !Array.isArray(value.types) ||
+        !value.types.every(isType) ||
+        !isModule(value.module) ||
+        !isStringArray(value.referenceNames) ||
+        !Array.isArray(value.references) ||
+        value.references.length % 3 !== 0 ||
+        !value.references.every((n) => Number.isInteger(n))
+    ) {
+        return null;
+    }
+
+    return { ...value, references: Int32Array.from(value.references) };
+};
+
+/**
+ * Creates a cache of unit summaries over a store.
+ *
+ * @param store - The entry storage, e.g. {@link createFileCacheStore} from `@katana-project/laser/node`
+ * @param parserVersion - The version of the parser producing the trees, a different version invalidates entries
+ * @returns The cache
+ */
+export const createAnalysisCache = (store: AnalysisCacheStore, parserVersion: string): AnalysisCache => {
+    const stats: AnalysisCacheStats = { hits: 0, misses: 0, stale: 0, corrupt: 0 };
+    const keyOf = (sourceHash: string) => hashText(`${CACHE_FORMAT_VERSION}:${parserVersion}:${sourceHash}`);
+
+    return {
+        stats,
+        async get(source: string) {
+            const sourceHash = hashText(source);
+            const key = keyOf(sourceHash);
+
+            const data = await store.get(key);
+            if (data === null) {
+                stats.misses++;
+                return null;
+            }
+
+            let entry: CacheEntry | null = null;
+            try {
+                entry = JSON.parse(data);
+            } catch {
+                // handled below
+            }
+
+            const summary =
+                entry && typeof entry.summary === "string" && entry.checksum === hashText(entry.summary)
+                    ? deserializeSummary(entry.summary)
+                    : null;
+            if (!summary) {
+                stats.corrupt++;
+                stats.misses++;
+                await store.delete(key);
+                return null;
+            }
+
+            // a key collision, or an entry written by a different version of the library or parser
+            if (
+                entry.format !== CACHE_FORMAT_VERSION ||
+                entry.parserVersion !== parserVersion ||
+                entry.sourceHash !== sourceHash ||
+                entry.sourceLength !== source.length
+            ) {
+                stats.stale++;
+                stats.misses++;
+                await store.delete(key);
+                return null;
+            }
+
+            stats.hits++;
+            return summary;
+        },
+        async set(source: string, summary: UnitSummary) {
+            const sourceHash = hashText(source);
+            const serialized = serializeSummary(summary);
+            const entry: CacheEntry = {
+                format: CACHE_FORMAT_VERSION,
+                parserVersion,
+                sourceHash,
+                sourceLength: source.length,
+                checksum: hashText(serialized),
+                summary: serialized,
+            };
+
+            await store.set(keyOf(sourceHash), JSON.stringify(entry));
+        },
+    };
+};
@@ -0,0 +1,328 @@
+import { expect } from "chai";
+import { deflateRawSync } from "zlib";
+import { bufferSource, classPathReference, readClassIndex, readModuleInfo, readModuleName } from "./class-index.js";
+
+interface TestEntry {
+    name: string;
+    data?: Uint8Array;
+    deflate?: boolean;
+}
+
+// writes a minimal ZIP archive, CRCs are left out as the reader never checks them
+const createArchive = (entries: TestEntry[], prefix: Uint8Array = new Uint8Array(), zip64 = false): Uint8Array => {
+    const encoder = new TextEncoder();
+    const locals: number[] = [];
+    const central: number[] = [];
+    const u16 = (out: number[], value: number) => out.push(value & 0xff, (value >>> 8) & 0xff);
+    const u32 = (out: number[], value: number) => {
+        u16(out, value & 0xffff);
+        u16(out, value >>> 16);
+    };
+
+    for (const entry of entries) {
+        const name = encoder.encode(entry.name);
+        const raw = entry.data ?? new Uint8Array();
+        const data = entry.deflate ? new Uint8Array(deflateRawSync(raw)) : raw;
+        const method = entry.deflate ? 8 : 0;
+        const localOffset = locals.length;
+
+        u32(locals, 0x04034b50);
+        u16(locals, 20);
+        u16(locals, 0);
+        u16(locals, method);
+        u32(locals, 0); // time, date
+        u32(locals, 0); // crc
+        u32(locals, data.length);
+        u32(locals, raw.length);
+        u16(locals, name.length);
+        u16(locals, 0);
+        locals.push(...name, ...data);
+
+        u32(central, 0x02014b50);
+        u16(central, 20);
+        u16(central, 20);
+        u16(central, 0);
+        u16(central, method);
+        u32(central, 0); // time, date
+        u32(central, 0); // crc
+        u32(central, data.length);
+        u32(central, raw.length);
+        u16(central, name.length);
+        u16(central, 0);
+        u16(central, 0);
+        u16(central, 0);
+        u16(central, 0);
+        u32(central, 0);
+        u32(central, localOffset);
+        central.push(...name);
+    }
+
+    const eocd: number[] = [];
+    if (zip64) {
+        // ZIP64 record and locator, with the values of the end of central directory record left overflowed
+        const u64 = (out: number[], value: number) => {
+            u32(out, value);
+            u32(out, 0);
+        };
+        u32(eocd, 0x06064b50);
+        u64(eocd, 44);
+        u16(eocd, 45);
+        u16(eocd, 45);
+        u32(eocd, 0);
+        u32(eocd, 0);
+        u64(eocd, entries.length);
+        u64(eocd, entries.length);
+        u64(eocd, central.length);
+        u64(eocd, locals.length);
+
+        u32(eocd, 0x07064b50);
+        u32(eocd, 0);
+        u64(eocd, locals.length + central.length);
+        u32(eocd, 1);
+    }
+    u32(eocd, 0x06054b50);
+    u16(eocd, 0);
+    u16(eocd, 0);
+    u16(eocd, zip64 ? 0xffff : entries.length);
+    u16(eocd, zip64 ? 0xffff : entries.length);
+    u32(eocd, zip64 ? 0xffffffff : central.length);
+    u32(eocd, zip64 ? 0xffffffff : locals.length);
+    u16(eocd, 0);
+
+    return new Uint8Array([...prefix, ...locals, ...central, ...eocd]);
+};
+
+// writes a module-info.class with only a Module attribute
+const createModuleInfo = (
+    moduleName: string,
+    requires: [name: string, flags: number][] = [],
+    exports: [name: string, targets: string[]][] = []
+): Uint8Array => {
+    const encoder = new TextEncoder();
+    const out: number[] = [];
+    const u16 = (value: number) => out.push((value >>> 8) & 0xff, value & 0xff);
+    const u32 = (value: number) => {
+        u16(value >>> 16);
+        u16(value & 0xffff);
+    };
+    const utf8 = (value: string) => {
+        const bytes = encoder.encode(value);
+        out.push(1);
+        u16(bytes.length);
+        out.push(...bytes);
+    };
+
+    // module and package entries after the fixed ones, each a UTF-8 entry and the entry naming it
+    const names = [...requires.map(([name]) => name), ...exports.flatMap(([name, targets]) => [name, ...targets])];
+    const nameIndex = (i: number) => 9 + i * 2;
+    const packages = new Set(exports.map(([name]) => name));
+
+    u32(0xcafebabe);
+    u16(0);
+    u16(53);
+    u16(8 + names.length * 2); // constant pool count
+    utf8("module-info"); // #1
+    out.push(7); // #2 class
+    u16(1);
+    utf8("Module"); // #3
+    utf8(moduleName); // #4
+    out.push(19); // #5 module
+    u16(4);
+    out.push(5); // #6 long, takes two slots
+    u32(0);
+    u32(0);
+    names.forEach((name, i) => {
+        utf8(name); // #8 + i * 2
+        out.push(packages.has(name) ? 20 : 19); // #9 + i * 2, package or module
+        u16(8 + i * 2);
+    });
+    u16(0x8000); // access flags
+    u16(2); // this class
+    u16(0); // super class
+    u16(0); // interfaces
+    u16(0); // fields
+    u16(0); // methods
+    u16(1); // attributes
+    u16(3);
+    u32(16 + requires.length * 6 + exports.reduce((length, [, targets]) => length + 6 + targets.length * 2, 0));
+    u16(5); // module name
+    u16(0); // flags
+    u16(0); // version
+    u16(requires.length);
+    requires.forEach(([, flags], i) => {
+        u16(nameIndex(i));
+        u16(flags);
+        u16(0); // version
+    });
+    u16(exports.length);
+    let next = requires.length;
+    for (const [, targets] of exports) {
+        u16(nameIndex(next++));
+        u16(0); // flags
+        u16(targets.length);
+        for (let i = 0; i < targets.length; i++) {
+            u16(nameIndex(next++));
+        }
+    }
+    for (let i = 0; i < 3; i++) {
+        u16(0); // opens, uses, provides
+    }
+
+    return new Uint8Array(out);
+};
+
+describe("Class Index", () => {
+    describe("classPathReference", () => {
+        it("should convert top-level classes", () => {
+            expect(classPathReference("java/util/List.class", "java.base")).to.deep.equal({
+                name: "List",
+                qualifiedName: "java.util.List",
+                packageName: "java.util",
+                moduleName: "java.base",
+            });
+        });
+
+        it("should convert nested classes", () => {
+            const ref = classPathReference("java/util/Map$Entry.class", null);
+
+            expect(ref?.name).to.equal("Map.Entry");
+            expect(ref?.qualifiedName).to.equal("java.util.Map.Entry");
+        });
+
+        it("should skip anonymous, local and descriptor classes", () => {
+            expect(classPathReference("a/Outer$1.class", null)).to.be.null;
+            expect(classPathReference("a/Outer$1Local.class", null)).to.be.null;
+            expect(classPathReference("a/package-info.class", null)).to.be.null;
+            expect(classPathReference("module-info.class", null)).to.be.null;
+        });
+
+        it("should handle the default package", () => {
+            const ref = classPathReference("Main.class", null);
+
+            expect(ref?.qualifiedName).to.equal("Main");
+            expect(ref?.packageName).to.equal("");
+        });
+    });
+
+    describe("readModuleName", () => {
+        it("should read the module attribute", () => {
+            expect(readModuleName(createModuleInfo("com.example"))).to.equal("com.example");
+        });
+
+        it("should reject non-class files", () => {
+            expect(() => readModuleName(new Uint8Array(16))).to.throw();
+        });
+    });
+
+    describe("readModuleInfo", () => {
+        it("should read unqualified exports and transitive requires", () => {
+            const bytes = createModuleInfo(
+                "java.desktop",
+                [
+                    ["java.base", 0x8000],
+                    ["java.datatransfer", 0x0020],
+                    ["java.xml", 0x0020 | 0x0040],
+                ],
+                [
+                    ["java/awt", []],
+                    ["sun/awt", ["jdk.accessibility"]],
+                    ["javax/swing", []],
+                ]
+            );
+
+            expect(readModuleInfo(bytes)).to.deep.equal({
+                name: "java.desktop",
+                exports: ["java.awt", "javax.swing"],
+                requiresTransitive: ["java.datatransfer", "java.xml"],
+            });
+            expect(readModuleName(bytes)).to.equal("java.desktop");
+        });
+    });
+
+    describe("readClassIndex", () => {
+        it("should list classes of a jar", async () => {
+            const jar = createArchive([
+                { name: "META-INF/MANIFEST.MF", data: new TextEncoder().encode("Manifest-Version: 1.0\n") },
+                { name: "com/example/" },
+                { name: "com/example/Api.class" },
+                { name: "com/example/Api$Builder.class" },
+                { name: "com/example/Api$1.class" },
+                { name: "META-INF/versions/11/com/example/Api.class" },
+                { name: "META-INF/versions/11/com/example/Java11Only.class" },
+            ]);
+            const index = await readClassIndex(bufferSource(jar));
+
+            expect(index.moduleName).to.be.null;
+            expect(index.types.map((t) => t.qualifiedName)).to.deep.equal([
+                "com.example.Api",
+                "com.example.Api.Builder",
+                "com.example.Java11Only",
+            ]);
+        });
+
+        it("should read the module name of a modular jar", async () => {
+            const jar = createArchive([
+                { name: "module-info.class", data: createModuleInfo("com.example"), deflate: true },
+                { name: "com/example/Api.class" },
+            ]);
+            const index = await readClassIndex(bufferSource(jar));
+
+            expect(index.moduleName).to.equal("com.example");
+            expect(index.types).to.have.lengthOf(1);
+            expect(index.types[0].moduleName).to.equal("com.example");
+        });
+
+        it("should prefer the module name from options", async () => {
+            const jar = createArchive([
+                { name: "module-info.class", data: createModuleInfo("com.example") },
+                { name: "com/example/Api.class" },
+            ]);
+            const index = await readClassIndex(bufferSource(jar), { moduleName: "automatic" });
+
+            expect(index.types[0].moduleName).to.equal("automatic");
+        });
+
+        it("should read jmod files", async () => {
+            const jmod = createArchive(
+                [
+                    { name: "classes/module-info.class", data: createModuleInfo("java.base"), deflate: true },
+                    { name: "classes/java/lang/Object.class" },
+                    { name: "classes/java/util/Map$Entry.class" },
+                    { name: "lib/libjava.so" },
+                    { name: "conf/security/java.policy" },
+                ],
+                new Uint8Array([0x4a, 0x4d, 0x01, 0x00])
+            );
+            const index = await readClassIndex(bufferSource(jmod));
+
+            expect(index.moduleName).to.equal("java.base");
+            expect(index.types.map((t) => t.qualifiedName)).to.deep.equal(["java.lang.Object", "java.util.Map.Entry"]);
+        });
+
+        it("should read prefixed ZIP64 archives", async () => {
+            const jmod = createArchive(
+                [
+                    { name: "classes/module-info.class", data: createModuleInfo("java.base"), deflate: true },
+                    { name: "classes/java/lang/Object.class" },
+                ],
+                new Uint8Array([0x4a, 0x4d, 0x01, 0x00]),
+                true
+            );
+            const index = await readClassIndex(bufferSource(jmod));
+
+            expect(index.moduleName).to.equal("java.base");
+            expect(index.types.map((t) => t.qualifiedName)).to.deep.equal(["java.lang.Object"]);
+        });
+
+        it("should reject non-archives", async () => {
+            let error: unknown = null;
+            try {
+                await readClassIndex(bufferSource(new Uint8Array(64)));
+            } catch (e) {
+                error = e;
+            }
+
+            expect(error).to.be.instanceOf(Error);
+        });
+    });
+});
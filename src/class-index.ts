@@ -0,0 +1,441 @@
+import { ModuleInfo } from "./modules.js";
+import { ExternalTypeReference } from "./resolver.js";
+
+/**
+ * Random access to the bytes of an archive, e.g. a file handle or an in-memory buffer.
+ */
+export interface RandomAccessSource {
+    /** The size of the archive in bytes. */
+    readonly size: number;
+
+    /**
+     * Reads a range of bytes.
+     *
+     * @param offset - The offset to read from
+     * @param length - The number of bytes to read
+     * @returns The bytes read
+     */
+    read(offset: number, length: number): Promise<Uint8Array>;
+}
+
+/**
+ * Creates a random access source over an in-memory buffer.
+ *
+ * @param data - The archive bytes
+ * @returns The source
+ */
+export const bufferSource = (data: Uint8Array): RandomAccessSource => ({
+    size: data.length,
+    read: async (offset, length) => data.subarray(offset, offset + length),
+});
+
+/**
+ * Types found in a class archive.
+ */
+export interface ClassIndex {
+    /** The module name, from `module-info.class` or the options, if any. */
+    moduleName: string | null;
+    /** The module descriptor, if `module-info.class` was read. */
+    module: ModuleInfo | null;
+    /** The nameable types of the archive. */
+    types: ExternalTypeReference[];
+}
+
+/**
+ * Options for reading class archives.
+ */
+export interface ClassIndexOptions {
+    /** A module name to use instead of reading `module-info.class`, e.g. an automatic module name. */
+    moduleName?: string;
+}
+
+const EOCD_SIGNATURE = 0x06054b50;
+const EOCD_SIZE = 22;
+const ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+const ZIP64_EOCD_SIGNATURE = 0x06064b50;
+const CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+const LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+interface ArchiveEntry {
+    name: string;
+    method: number;
+    compressedSize: number;
+    localOffset: number;
+}
+
+const view = (bytes: Uint8Array) => new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+
+const readUint64 = (data: DataView, offset: number): number =>
+    data.getUint32(offset, true) + data.getUint32(offset + 4, true) * 0x100000000;
+
+const utf8 = new TextDecoder();
+
+interface CentralDirectory {
+    entries: ArchiveEntry[];
+    /** The offset of the ZIP data in the source, entry offsets are relative to it. */
+    base: number;
+}
+
+// reads the central directory only, entry data is never touched
+const readCentralDirectory = async (source: RandomAccessSource): Promise<CentralDirectory> => {
+    const tailLength = Math.min(source.size, EOCD_SIZE + 0xffff);
+    const tailOffset = source.size - tailLength;
+    const tail = view(await source.read(tailOffset, tailLength));
+
+    let eocd = -1;
+    for (let i = tailLength - EOCD_SIZE; i >= 0; i--) {
+        if (tail.getUint32(i, true) === EOCD_SIGNATURE) {
+            eocd = i;
+            break;
+        }
+    }
+    if (eocd === -1) {
+        throw new Error("Not a ZIP archive, end of central directory not found");
+    }
+
+    let count = tail.getUint16(eocd + 10, true);
+    let size = tail.getUint32(eocd + 12, true);
+    let offset = tail.getUint32(eocd + 16, true);
+    let end = tailOffset + eocd;
+    if ((count === 0xffff || size === 0xffffffff || offset === 0xffffffff) && eocd >= 20) {
+        if (tail.getUint32(eocd - 20, true) === ZIP64_LOCATOR_SIGNATURE) {
+            // the locator's offset is relative to the ZIP start too, so a prefix shifts the record,
+            // which directly precedes the locator unless it has extensible data
+            const recordedOffset = readUint64(tail, eocd - 20 + 8);
+            let zip64Offset = Math.max(0, tailOffset + eocd - 20 - 56);
+            let zip64 = view(await source.read(zip64Offset, 56));
+            if (zip64.getUint32(0, true) !== ZIP64_EOCD_SIGNATURE && zip64Offset !== recordedOffset) {
+                zip64Offset = recordedOffset;
+                zip64 = view(await source.read(zip64Offset, 56));
+            }
+            if (zip64.getUint32(0, true) !== ZIP64_EOCD_SIGNATURE) {
+                throw new Error("Malformed ZIP64 end of central directory");
+            }
+
+            count = readUint64(zip64, 32);
+            size = readUint64(zip64, 40);
+            offset = readUint64(zip64, 48);
+            end = zip64Offset;
+        }
+    }
+
+    // archives may be prefixed (jmod headers, launcher scripts), offsets are relative to the ZIP start
+    const start = end - size;
+    const base = start - offset;
+
+    const directory = await source.read(start, size);
+    const data = view(directory);
+    const entries: ArchiveEntry[] = [];
+    for (let pos = 0, i = 0; i < count && pos + 46 <= size; i++) {
+        if (data.getUint32(pos, true) !== CENTRAL_HEADER_SIGNATURE) {
+            throw new Error(`Malformed central directory entry at ${start + pos}`);
+        }
+
+        const nameLength = data.getUint16(pos + 28, true);
+        const extraLength = data.getUint16(pos + 30, true);
+        const commentLength = data.getUint16(pos + 32, true);
+        const nameStart = pos + 46;
+
+        let compressedSize = data.getUint32(pos + 20, true);
+        let localOffset = data.getUint32(pos + 42, true);
+        if (compressedSize === 0xffffffff || localOffset === 0xffffffff) {
+            // ZIP64 extended information, fields are present only when their header value overflowed
+            for (let extra = nameStart + nameLength; extra + 4 <= nameStart + nameLength + extraLength; ) {
+                const id = data.getUint16(extra, true);
+                const length = data.getUint16(extra + 2, true);
+                if (id === 0x0001) {
+                    let field = extra + 4;
+                    if (data.getUint32(pos + 24, true) === 0xffffffff) {
+                        field += 8; // uncompressed size
+                    }
+                    if (compressedSize === 0xffffffff) {
+                        compressedSize = readUint64(data, field);
+                        field += 8;
+                    }
+                    if (localOffset === 0xffffffff) {
+                        localOffset = readUint64(data, field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+        }
+
+        entries.push({
+            name: utf8.decode(directory.subarray(nameStart, nameStart + nameLength)),
+            method: data.getUint16(pos + 10, true),
+            compressedSize,
+            localOffset,
+        });
+        pos = nameStart + nameLength + extraLength + commentLength;
+    }
+
+    return { entries, base };
+};
+
+const inflateRaw = async (data: Uint8Array): Promise<Uint8Array> => {
+    const stream = new DecompressionStream("deflate-raw");
+    const writer = stream.writable.getWriter();
+    // failures surface when reading, don't leave the write side rejections unhandled
+    writer.write(new Uint8Array(data)).catch(() => {});
+    writer.close().catch(() => {});
+
+    return new Uint8Array(await new Response(stream.readable).arrayBuffer());
+};
+
+const readEntry = async (source: RandomAccessSource, base: number, entry: ArchiveEntry): Promise<Uint8Array> => {
+    const header = view(await source.read(base + entry.localOffset, 30));
+    if (header.getUint32(0, true) !== LOCAL_HEADER_SIGNATURE) {
+        throw new Error(`Malformed local header for ${entry.name}`);
+    }
+
+    const dataOffset = base + entry.localOffset + 30 + header.getUint16(26, true) + header.getUint16(28, true);
+    const data = await source.read(dataOffset, entry.compressedSize);
+    switch (entry.method) {
+        case 0:
+            return data;
+        case 8:
+            return inflateRaw(data);
+    }
+
+    throw new Error(`Unsupported compression method ${entry.method} for ${entry.name}`);
+};
+
+// ACC_TRANSITIVE of requires entries in the Module attribute
+const REQUIRES_TRANSITIVE = 0x0020;
+
+// reads a Module attribute body, names are resolved from module and package constant pool indices
+const readModuleAttribute = (
+    data: DataView,
+    pos: number,
+    nameOf: (index: number) => string | null
+): ModuleInfo | null => {
+    const name = nameOf(data.getUint16(pos));
+    if (name === null) {
+        return null;
+    }
+
+    const module: ModuleInfo = { name, exports: [], requiresTransitive: [] };
+    pos += 6; // name, flags, version
+
+    const requires = data.getUint16(pos);
+    pos += 2;
+    for (let i = 0; i < requires; i++) {
+        const required = nameOf(data.getUint16(pos));
+        if (required !== null && (data.getUint16(pos + 2) & REQUIRES_TRANSITIVE) !== 0) {
+            module.requiresTransitive.push(required);
+        }
+        pos += 6;
+    }
+
+    const exports = data.getUint16(pos);
+    pos += 2;
+    for (let i = 0; i < exports; i++) {
+        const exported = nameOf(data.getUint16(pos));
+        const targets = data.getUint16(pos + 4);
+        // qualified exports are only visible to the listed modules
+        if (exported !== null && targets === 0) {
+            module.exports.push(exported.replace(/\//g, "."));
+        }
+        pos += 6 + targets * 2;
+    }
+
+    return module;
+};
+
+/**
+ * Reads the module name from a `module-info.class` file.
+ *
+ * @param bytes - The class file bytes
+ * @returns The module name or null, if the class file has no `Module` attribute
+ */
+export const readModuleName = (bytes: Uint8Array): string | null => readModuleInfo(bytes)?.name ?? null;
+
+/**
+ * Reads the module name, unqualified exports and transitive requires from a `module-info.class` file.
+ *
+ * @param bytes - The class file bytes
+ * @returns The module or null, if the class file has no `Module` attribute
+ */
+export const readModuleInfo = (bytes: Uint8Array): ModuleInfo | null => {
+    const data = view(bytes);
+    if (data.getUint32(0) !== 0xcafebabe) {
+        throw new Error("Not a class file");
+    }
+
+    // constant pool, keeping UTF-8 entries and name indices of module entries
+    const count = data.getUint16(8);
+    const utf8Entries: string[] = [];
+    const nameIndices: number[] = [];
+    let pos = 10;
+    for (let i = 1; i < count; i++) {
+        const tag = data.getUint8(pos++);
+        switch (tag) {
+            case 1: {
+                const length = data.getUint16(pos);
+                utf8Entries[i] = utf8.decode(bytes.subarray(pos + 2, pos + 2 + length));
+                pos += 2 + length;
+                break;
+            }
+            case 7:
+            case 8:
+            case 16:
+            case 19:
+            case 20:
+                nameIndices[i] = data.getUint16(pos);
+                pos += 2;
+                break;
+            case 15:
+                pos += 3;
+                break;
+            case 3:
+            case 4:
+            case 9:
+            case 10:
+            case 11:
+            case 12:
+            case 17:
+            case 18:
+                pos += 4;
+                break;
+            case 5:
+            case 6:
+                pos += 8;
+                i++; // takes two slots
+                break;
+            default:
+                throw new Error(`Unknown constant pool tag ${tag}`);
+        }
+    }
+
+    const skipAttributes = () => {
+        const attributes = data.getUint16(pos);
+        pos += 2;
+        for (let i = 0; i < attributes; i++) {
+            pos += 6 + data.getUint32(pos + 2);
+        }
+    };
+
+    pos += 6; // access flags, this class, super class
+    pos += 2 + data.getUint16(pos) * 2; // interfaces
+    for (let members = 0; members < 2; members++) {
+        // fields, then methods
+        const memberCount = data.getUint16(pos);
+        pos += 2;
+        for (let i = 0; i < memberCount; i++) {
+            pos += 6;
+            skipAttributes();
+        }
+    }
+
+    const attributes = data.getUint16(pos);
+    pos += 2;
+    for (let i = 0; i < attributes; i++) {
+        const name = utf8Entries[data.getUint16(pos)];
+        if (name === "Module") {
+            return readModuleAttribute(data, pos + 6, (index) => utf8Entries[nameIndices[index]] ?? null);
+        }
+        pos += 6 + data.getUint32(pos + 2);
+    }
+
+    return null;
+};
+
+const VERSIONED_PREFIX = "META-INF/versions/";
+
+// maps an archive entry name to its class path inside the archive, null for non-class entries
+const classPath = (name: string, jmod: boolean): string | null => {
+    if (!name.endsWith(".class")) {
+        return null;
+    }
+
+    if (jmod) {
+        return name.startsWith("classes/") ? name.slice("classes/".length) : null;
+    }
+    if (name.startsWith(VERSIONED_PREFIX)) {
+        const versionEnd = name.indexOf("/", VERSIONED_PREFIX.length);
+        return versionEnd === -1 ? null : name.slice(versionEnd + 1);
+    }
+    return name.startsWith("META-INF/") ? null : name;
+};
+
+/**
+ * Converts a class file path to an external type reference.
+ *
+ * `$`-separated nested classes become `.`-separated nested types,
+ * anonymous and local classes (a segment starting with a digit) are not nameable and yield null.
+ *
+ * @param path - The class file path inside the archive, e.g. `java/util/Map$Entry.class`
+ * @param moduleName - The module name of the archive
+ * @returns The reference or null
+ */
+export const classPathReference = (path: string, moduleName: string | null): ExternalTypeReference | null => {
+    const binaryName = path.slice(0, -".class".length);
+    const packageEnd = binaryName.lastIndexOf("/");
+    const simpleBinaryName = binaryName.slice(packageEnd + 1);
+    if (simpleBinaryName === "module-info" || simpleBinaryName === "package-info") {
+        return null;
+    }
+
+    const segments = simpleBinaryName.split("$");
+    for (const segment of segments) {
+        const first = segment.charCodeAt(0);
+        if (!segment || (first >= 48 && first <= 57)) {
+            return null;
+        }
+    }
+
+    const packageName = packageEnd === -1 ? "" : binaryName.slice(0, packageEnd).replace(/\//g, ".");
+    const name = segments.join(".");
+    return {
+        name,
+        qualifiedName: packageName ? `${packageName}.${name}` : name,
+        packageName,
+        moduleName,
+    };
+};
+
+/**
+ * Reads the types of a JAR or JMOD archive.
+ *
+ * Only the ZIP central directory is read, class files are never inflated,
+ * except for `module-info.class` when no module name is given in the options.
+ *
+ * @param source - The archive
+ * @param options - Optional reading options
+ * @returns The types of the archive
+ */
+export const readClassIndex = async (
+    source: RandomAccessSource,
+    options: ClassIndexOptions = {}
+): Promise<ClassIndex> => {
+    const magic = await source.read(0, 4);
+    const jmod = magic.length === 4 && magic[0] === 0x4a && magic[1] === 0x4d; // "JM" + version
+
+    const { entries, base } = await readCentralDirectory(source);
+
+    let moduleName = options.moduleName ?? null;
+    let module: ModuleInfo | null = null;
+    if (moduleName === null) {
+        // prefer the unversioned descriptor, as in a jar on the module path
+        const descriptors = entries.filter((e) => classPath(e.name, jmod) === "module-info.class");
+        const descriptor = descriptors.find((e) => !e.name.startsWith(VERSIONED_PREFIX)) ?? descriptors[0];
+        if (descriptor) {
+            module = readModuleInfo(await readEntry(source, base, descriptor));
+            moduleName = module?.name ?? null;
+        }
+    }
+
+    const seen = new Set<string>();
+    const types: ExternalTypeReference[] = [];
+    for (const entry of entries) {
+        const path = classPath(entry.name, jmod);
+        const ref = path && classPathReference(path, moduleName);
+        if (ref && !seen.has(ref.qualifiedName)) {
+            seen.add(ref.qualifiedName);
+            types.push(ref);
+        }
+    }
+
+    return { moduleName, module, types };
+};
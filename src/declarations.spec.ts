@@ -0,0 +1,118 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readdirSync, readFileSync } from "fs";
+import { join } from "path";
+import { parseDeclarations, stripBodies } from "./declarations.js";
+import { CompilationUnit, parseUnit, parseUnitDeclarations } from "./unit.js";
+
+const samples = (dir: string): string[] =>
+    readdirSync(dir, { withFileTypes: true }).flatMap((entry) => {
+        const path = join(dir, entry.name);
+        return entry.isDirectory() ? samples(path) : path.endsWith(".java") ? [path] : [];
+    });
+
+const declarations = (unit: CompilationUnit) => ({
+    packageName: unit.packageName,
+    imports: unit.imports.map((i) => [i.kind, i.importedName, i.node.from, i.node.to]),
+    types: unit.types.map((t) => [t.kind, t.qualifiedName, t.typeParameters, t.node.from, t.node.to]),
+    supertypes: unit.types.map((t) =>
+        [t.superclass, ...t.interfaces, ...t.permits].map((ref) => ref && [ref.name, ref.node.from, ref.node.to])
+    ),
+});
+
+describe("Declaration indexing", () => {
+    describe("stripBodies", () => {
+        it("should blank out bodies and keep offsets", () => {
+            const source = `class A {
+    int[] values = { 1, 2 };
+    static { init(); }
+    void run() { if (x) { y("}"); } }
+    Runnable r = () -> { run(); };
+    Class<?> type = B.class;
+    interface I { default void f() { g('{'); } }
+    record R(int a) { R { check(a); } }
+}`;
+            const stripped = stripBodies(source);
+
+            expect(stripped).to.have.lengthOf(source.length);
+            expect(stripped.split("\n").map((line) => line.trim().replace(/\s+/g, " "))).to.deep.equal([
+                "class A {",
+                "int[] values = { };",
+                "static { }",
+                "void run() { }",
+                "Runnable r = () -> { };",
+                "Class<?> type = B.class;",
+                "interface I { default void f() { } }",
+                "record R(int a) { R { } }",
+                "}",
+            ]);
+        });
+
+        it("should skip braces in comments and literals", () => {
+            const source = `class A {
+    // {
+    /* } */
+    String s = """
+        { "\\"" }
+        """;
+    void f() { /* } */ }
+}`;
+            const stripped = stripBodies(source);
+
+            expect(stripped).to.include("/* } */\n");
+            expect(stripped).to.include('{ "\\"" }');
+            expect(stripped).to.not.include("/* } */ }");
+            expect(stripped.trimEnd().endsWith("}")).to.be.true;
+        });
+    });
+
+    describe("parseDeclarations", () => {
+        for (const path of samples("samples/sample")) {
+            it(`should find the declarations of ${path}`, () => {
+                const source = readFileSync(path, "utf-8");
+
+                const full = parseUnit(parser.parse(source), source);
+                const unit = parseDeclarations(parser, source);
+                expect(declarations(unit)).to.deep.equal(declarations(full));
+                expect(unit.source).to.equal(source);
+            });
+        }
+
+        it("should leave out local classes", () => {
+            const source = `package test;
+
+class Outer {
+    static class Member {}
+
+    void f() {
+        class Local {}
+    }
+}`;
+            const unit = parseDeclarations(parser, source);
+
+            expect(unit.types.map((t) => t.qualifiedName)).to.deep.equal(["Outer", "Outer.Member"]);
+        });
+    });
+
+    describe("parseUnitDeclarations", () => {
+        it("should only walk into nested types", () => {
+            const source = `package test;
+
+enum Outer {
+    A { class InConstant {} };
+
+    Object field = new Object() { class InAnonymous {} };
+
+    enum Member { B }
+
+    void f() {
+        class Local {}
+    }
+}`;
+            const unit = parseUnitDeclarations(parser.parse(source), source);
+
+            expect(unit.types.map((t) => t.qualifiedName)).to.deep.equal(["Outer", "Outer.Member"]);
+            expect(parseUnit(parser.parse(source), source).types).to.have.lengthOf(5);
+        });
+    });
+});
@@ -0,0 +1,146 @@
+import { Parser } from "@lezer/common";
+import { CompilationUnit, parseUnitDeclarations } from "./unit.js";
+
+const TYPE_KEYWORDS = new Set(["class", "interface", "enum"]);
+
+const isIdentifierStart = (ch: number) =>
+    (ch >= 97 && ch <= 122) || (ch >= 65 && ch <= 90) || ch === 95 || ch === 36 || ch > 127;
+const isIdentifierPart = (ch: number) => isIdentifierStart(ch) || (ch >= 48 && ch <= 57);
+
+// whether the tokens before a brace declare a type, i.e. the brace opens a type body
+const declaresType = (tokens: string[]): boolean => {
+    for (let i = 0; i < tokens.length; i++) {
+        const token = tokens[i];
+        if (TYPE_KEYWORDS.has(token) && tokens[i - 1] !== ".") {
+            // not a class literal
+            return true;
+        }
+        if (token === "record" && isIdentifierStart(tokens[i + 1]?.charCodeAt(0)) && /^[(<]$/.test(tokens[i + 2])) {
+            return true;
+        }
+    }
+    return false;
+};
+
+/**
+ * Blanks out everything a declaration index doesn't need from Java source code:
+ * the bodies of methods, constructors, initializers and lambdas, and field initializers containing braces.
+ *
+ * This is a light scanner, not a parser. It only tracks comments, literals and braces,
+ * and keeps a brace when the tokens before it, since the last `;`, `{` or `}`, declare a type.
+ * Blanked characters are replaced by spaces and line breaks are kept, so every offset stays the same.
+ *
+ * @param source - The source code
+ * @returns The source code with the bodies blanked out
+ */
+export const stripBodies = (source: string): string => {
+    const out: string[] = [];
+    // start of the text not yet copied, and start of the blanked region, -1 outside of one
+    let copied = 0;
+    let blankFrom = -1;
+    let depth = 0;
+    // brace kinds on the way to the current position, true for type bodies
+    const kept: boolean[] = [];
+    let tokens: string[] = [];
+
+    const blank = (from: number, to: number) => {
+        out.push(source.slice(copied, from), source.slice(from, to).replace(/[^\r\n]/g, " "));
+        copied = to;
+    };
+
+    let i = 0;
+    while (i < source.length) {
+        const ch = source.charCodeAt(i);
+        const next = source.charCodeAt(i + 1);
+
+        let end = i + 1;
+        if (ch === 47 && next === 47) {
+            // line comment
+            end = source.indexOf("\n", i);
+            end = end === -1 ? source.length : end;
+        } else if (ch === 47 && next === 42) {
+            // block comment
+            end = source.indexOf("*/", i + 2);
+            end = end === -1 ? source.length : end + 2;
+        } else if (ch === 34 && next === 34 && source.charCodeAt(i + 2) === 34) {
+            // text block
+            end = i + 3;
+            while (end < source.length && !source.startsWith('"""', end)) {
+                end += source.charCodeAt(end) === 92 ? 2 : 1;
+            }
+            end = Math.min(source.length, end + 3);
+        } else if (ch === 34 || ch === 39) {
+            // string or character literal, ending at the line at the latest
+            while (end < source.length && source.charCodeAt(end) !== ch && source.charCodeAt(end) !== 10) {
+                end += source.charCodeAt(end) === 92 ? 2 : 1;
+            }
+            end = Math.min(source.length, end + 1);
+            if (blankFrom === -1) {
+                tokens.push("");
+            }
+        } else if (isIdentifierStart(ch)) {
+            while (end < source.length && isIdentifierPart(source.charCodeAt(end))) {
+                end++;
+            }
+            if (blankFrom === -1) {
+                tokens.push(source.slice(i, end));
+            }
+        } else if (ch === 123) {
+            // {
+            if (blankFrom === -1) {
+                const type = kept.length === 0 || declaresType(tokens);
+                kept.push(type);
+                tokens = [];
+                if (!type) {
+                    blankFrom = i + 1;
+                    depth = 0;
+                }
+            } else {
+                depth++;
+            }
+        } else if (ch === 125) {
+            // }
+            if (blankFrom === -1) {
+                kept.pop();
+                tokens = [];
+            } else if (depth > 0) {
+                depth--;
+            } else {
+                blank(blankFrom, i);
+                blankFrom = -1;
+                kept.pop();
+                tokens = [];
+            }
+        } else if (ch === 59 && blankFrom === -1) {
+            // ;
+            tokens = [];
+        } else if (ch > 32 && blankFrom === -1) {
+            tokens.push(source[i]);
+        }
+
+        i = end;
+    }
+
+    if (blankFrom !== -1) {
+        // unbalanced braces, blank out to the end
+        blank(blankFrom, source.length);
+    }
+    out.push(source.slice(copied));
+    return out.join("");
+};
+
+/**
+ * Parses the declarations of a Java compilation unit, skipping the bodies of methods, initializers and lambdas.
+ *
+ * The package, imports and types are the ones {@link parseUnit} finds, except for types declared inside the skipped
+ * bodies, i.e. local classes and members of anonymous classes, which other units can't name anyway.
+ * The tree is parsed from the source as blanked out by {@link stripBodies}, so it has no nodes within the bodies,
+ * while names are read from the unchanged source. Its declarations are extracted with {@link parseUnitDeclarations},
+ * which doesn't walk into members other than nested types.
+ *
+ * @param parser - The parser to parse the blanked out source with, usually `@lezer/java`'s
+ * @param source - The source code of the Java file
+ * @returns The declaration-only compilation unit information.
+ */
+export const parseDeclarations = (parser: Parser, source: string): CompilationUnit =>
+    parseUnitDeclarations(parser.parse(stripBodies(source)), source);
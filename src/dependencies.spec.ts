@@ -0,0 +1,73 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { createDependencyGraph } from "./dependencies.js";
+import { createTypeReferenceResolver, ExternalTypeReference } from "./resolver.js";
+import { createExternalSymbolIndex } from "./symbol-index.js";
+import { parseUnit } from "./unit.js";
+
+const parse = (source: string) => parseUnit(parser.parse(source), source);
+
+describe("Dependency Graph", () => {
+    const list: ExternalTypeReference = {
+        name: "List",
+        qualifiedName: "java.util.List",
+        packageName: "java.util",
+        moduleName: "java.base",
+    };
+    const helper: ExternalTypeReference = {
+        name: "Helper",
+        qualifiedName: "test.Helper",
+        packageName: "test",
+        moduleName: null,
+    };
+    const other: ExternalTypeReference = {
+        name: "Other",
+        qualifiedName: "other.Other",
+        packageName: "other",
+        moduleName: null,
+    };
+    const symbols = createExternalSymbolIndex([list]);
+
+    const wildcard = parse(`package test;
+
+import java.util.*;
+
+class Wildcard { List<Helper> items; }`);
+    const explicit = parse(`package test;
+
+import java.util.List;
+
+class Explicit { List<String> items; }`);
+
+    it("should record found and missing lookups", () => {
+        const graph = createDependencyGraph();
+        createTypeReferenceResolver(wildcard, graph.track("Wildcard.java", symbols)).resolveAll();
+        createTypeReferenceResolver(explicit, graph.track("Explicit.java", symbols)).resolveAll();
+
+        // found through the wildcard import, and only imported by name in the other unit
+        expect(Array.from(graph.dependents([list]))).to.deep.equal(["Wildcard.java"]);
+        // not found, in the same package
+        expect(Array.from(graph.dependents([helper]))).to.deep.equal(["Wildcard.java"]);
+        expect(graph.dependents([other]).size).to.equal(0);
+    });
+
+    it("should forget the lookups of a unit", () => {
+        const graph = createDependencyGraph();
+        createTypeReferenceResolver(wildcard, graph.track("Wildcard.java", symbols)).resolveAll();
+
+        expect(graph.delete("Wildcard.java")).to.be.true;
+        expect(graph.delete("Wildcard.java")).to.be.false;
+        expect(graph.dependents([list, helper]).size).to.equal(0);
+    });
+
+    it("should pass lookups through", () => {
+        const tracked = createDependencyGraph().track("Wildcard.java", symbols);
+
+        expect(tracked.size).to.equal(symbols.size);
+        expect(tracked.version).to.equal(symbols.version);
+        expect(tracked.byQualifiedName("java.util.List")).to.equal(list);
+        expect(tracked.byPackage("java.util", "List")).to.equal(list);
+        expect(tracked.byPackages(["java.util"], "List")).to.equal(list);
+        expect(tracked.byModule("java.base", "List")).to.equal(list);
+    });
+});
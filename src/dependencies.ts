@@ -0,0 +1,192 @@
+import { ModuleGraph } from "./modules.js";
+import { ExternalTypeReference } from "./resolver.js";
+import { ExternalSymbolIndex } from "./symbol-index.js";
+
+/**
+ * Record of the symbol lookups each unit's resolution made, found or not.
+ *
+ * Lookups are keyed the way the symbol index answers them, by qualified name, by package and name, and by module and
+ * last name segment, so the units affected by adding or removing a reference are the ones that looked up its keys.
+ * Lookups across several packages are keyed by the name alone, standing for a lookup in every package.
+ * Lookups of module exports are keyed by the module name.
+ */
+export interface DependencyGraph {
+    /**
+     * Finds the units whose resolutions may change when the references are added or removed.
+     *
+     * @param refs - The added or removed references
+     * @returns The identifiers of the units that looked up any of their names
+     */
+    dependents(refs: Iterable<ExternalTypeReference>): Set<string>;
+
+    /**
+     * Finds the units whose resolutions may change when the exports of modules change.
+     *
+     * @param moduleNames - The modules whose exports changed, e.g. from {@link ModuleGraph.dependentModules}
+     * @returns The identifiers of the units that looked up the exports of any of them
+     */
+    moduleDependents(moduleNames: Iterable<string>): Set<string>;
+}
+
+/**
+ * Dependency graph filled in by tracking the lookups of resolvers.
+ */
+export interface MutableDependencyGraph extends DependencyGraph {
+    /**
+     * Wraps a symbol index, recording every lookup made through it as a dependency of a unit.
+     *
+     * @param unitId - The unit identifier
+     * @param symbols - The symbol index to look up in
+     * @returns The recording index, to create the unit's resolver with
+     */
+    track(unitId: string, symbols: ExternalSymbolIndex): ExternalSymbolIndex;
+
+    /**
+     * Wraps a module graph, recording every exports lookup made through it as a dependency of a unit.
+     *
+     * @param unitId - The unit identifier
+     * @param modules - The module graph to look up in
+     * @returns The recording graph, to create the unit's resolver with
+     */
+    trackModules(unitId: string, modules: ModuleGraph): ModuleGraph;
+
+    /**
+     * Forgets the recorded dependencies of a unit, e.g. once it changed and needs to be resolved again.
+     *
+     * @param unitId - The unit identifier
+     * @returns Whether the unit had any recorded dependencies
+     */
+    delete(unitId: string): boolean;
+}
+
+const lastSegment = (name: string): string => {
+    const index = name.lastIndexOf(".");
+    return index === -1 ? name : name.slice(index + 1);
+};
+
+const qualifiedKey = (qualifiedName: string) => `q:${qualifiedName}`;
+const packageKey = (packageName: string, name: string) => `p:${packageName}:${name}`;
+const moduleKey = (moduleName: string, name: string) => `m:${moduleName}:${lastSegment(name)}`;
+const nameKey = (name: string) => `n:${name}`;
+const exportsKey = (moduleName: string) => `e:${moduleName}`;
+
+// the keys of every lookup that can find the reference, mirroring the symbol index buckets
+const referenceKeys = (ref: ExternalTypeReference): string[] => {
+    const keys = [qualifiedKey(ref.qualifiedName)];
+    if (ref.packageName !== null && ref.packageName !== undefined) {
+        keys.push(packageKey(ref.packageName, ref.name), nameKey(ref.name));
+    }
+    if (ref.moduleName) {
+        keys.push(moduleKey(ref.moduleName, ref.name), moduleKey(ref.moduleName, ref.qualifiedName));
+    }
+    return keys;
+};
+
+/**
+ * Creates an empty dependency graph.
+ *
+ * @returns The dependency graph
+ */
+export const createDependencyGraph = (): MutableDependencyGraph => {
+    // lookup key -> units, and the reverse for removal
+    const units = new Map<string, Set<string>>();
+    const keys = new Map<string, Set<string>>();
+
+    const record = (unitId: string, key: string) => {
+        let unitKeys = keys.get(unitId);
+        if (!unitKeys) {
+            unitKeys = new Set();
+            keys.set(unitId, unitKeys);
+        }
+        if (unitKeys.has(key)) {
+            return;
+        }
+
+        unitKeys.add(key);
+        const keyUnits = units.get(key);
+        if (keyUnits) {
+            keyUnits.add(unitId);
+        } else {
+            units.set(key, new Set([unitId]));
+        }
+    };
+
+    const collect = (result: Set<string>, key: string) => {
+        for (const unitId of units.get(key) ?? []) {
+            result.add(unitId);
+        }
+    };
+
+    return {
+        dependents(refs: Iterable<ExternalTypeReference>) {
+            const result = new Set<string>();
+            for (const ref of refs) {
+                for (const key of referenceKeys(ref)) {
+                    collect(result, key);
+                }
+            }
+            return result;
+        },
+        moduleDependents(moduleNames: Iterable<string>) {
+            const result = new Set<string>();
+            for (const moduleName of moduleNames) {
+                collect(result, exportsKey(moduleName));
+            }
+            return result;
+        },
+        track(unitId: string, symbols: ExternalSymbolIndex): ExternalSymbolIndex {
+            return {
+                get size() {
+                    return symbols.size;
+                },
+                get version() {
+                    return symbols.version;
+                },
+                byQualifiedName(qualifiedName: string) {
+                    record(unitId, qualifiedKey(qualifiedName));
+                    return symbols.byQualifiedName(qualifiedName);
+                },
+                byPackage(packageName: string, name: string) {
+                    record(unitId, packageKey(packageName, name));
+                    return symbols.byPackage(packageName, name);
+                },
+                byPackages(packages: readonly string[], name: string) {
+                    record(unitId, nameKey(name));
+                    return symbols.byPackages(packages, name);
+                },
+                byModule(moduleName: string, name: string) {
+                    record(unitId, moduleKey(moduleName, name));
+                    return symbols.byModule(moduleName, name);
+                },
+            };
+        },
+        trackModules(unitId: string, modules: ModuleGraph): ModuleGraph {
+            return {
+                get version() {
+                    return modules.version;
+                },
+                exportedPackages(moduleName: string) {
+                    // recorded for unknown modules too, their references are looked up by module name until known
+                    record(unitId, exportsKey(moduleName));
+                    return modules.exportedPackages(moduleName);
+                },
+                dependentModules: (moduleName: string) => modules.dependentModules(moduleName),
+            };
+        },
+        delete(unitId: string) {
+            const unitKeys = keys.get(unitId);
+            if (!unitKeys) {
+                return false;
+            }
+
+            for (const key of unitKeys) {
+                const keyUnits = units.get(key);
+                if (keyUnits?.delete(unitId) && keyUnits.size === 0) {
+                    units.delete(key);
+                }
+            }
+            keys.delete(unitId);
+            return true;
+        },
+    };
+};
@@ -0,0 +1,187 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readFileSync } from "fs";
+import { createTypeHierarchy, resolveHierarchy } from "./hierarchy.js";
+import { parseUnit } from "./unit.js";
+import { createWorkspace } from "./workspace.js";
+
+const parse = (source: string) => parseUnit(parser.parse(source), source);
+const sample = (name: string) => parse(readFileSync(`samples/sample/inheritance/${name}.java`, "utf-8"));
+
+describe("Type hierarchy", () => {
+    const externalRefs = [
+        { name: "Runnable", qualifiedName: "java.lang.Runnable", packageName: "java.lang", moduleName: "java.base" },
+    ];
+    const diamond = sample("Diamond");
+    const zigZag = sample("ZigZag");
+    const linear = sample("Linear");
+
+    describe("resolveHierarchy", () => {
+        it("should resolve supertype clauses", () => {
+            const entries = resolveHierarchy(diamond);
+
+            expect(entries.map((e) => e.qualifiedName)).to.deep.equal([
+                "sample.inheritance.Diamond",
+                "sample.inheritance.Diamond.Root",
+                "sample.inheritance.Diamond.ChildA",
+                "sample.inheritance.Diamond.ChildB",
+                "sample.inheritance.Diamond.ChildC",
+            ]);
+            expect(entries[2]).to.deep.equal({
+                qualifiedName: "sample.inheritance.Diamond.ChildA",
+                superclass: null,
+                interfaces: ["sample.inheritance.Diamond.Root"],
+                permits: [],
+            });
+            expect(entries[4].interfaces).to.deep.equal([
+                "sample.inheritance.Diamond.ChildA",
+                "sample.inheritance.Diamond.ChildB",
+            ]);
+        });
+
+        it("should resolve superclasses", () => {
+            const entries = resolveHierarchy(linear);
+            const c = entries.find((e) => e.qualifiedName === "sample.inheritance.Linear.C");
+
+            expect(c?.superclass).to.equal("sample.inheritance.Linear.B");
+            expect(c?.interfaces).to.be.empty;
+        });
+
+        it("should leave out unresolved supertypes", () => {
+            const entries = resolveHierarchy(
+                parse("class A extends Missing implements Runnable, Other {}"),
+                externalRefs
+            );
+
+            expect(entries[0].superclass).to.be.null;
+            expect(entries[0].interfaces).to.deep.equal(["java.lang.Runnable"]);
+        });
+    });
+
+    describe("queries", () => {
+        const hierarchy = createTypeHierarchy();
+        hierarchy.set("Diamond.java", resolveHierarchy(diamond));
+        hierarchy.set("ZigZag.java", resolveHierarchy(zigZag));
+        hierarchy.set("Linear.java", resolveHierarchy(linear));
+
+        it("should find supertypes of a diamond once", () => {
+            expect(hierarchy.supertypes("sample.inheritance.Diamond.ChildC")).to.deep.equal([
+                "sample.inheritance.Diamond.ChildA",
+                "sample.inheritance.Diamond.ChildB",
+                "sample.inheritance.Diamond.Root",
+            ]);
+            expect(hierarchy.subtypes("sample.inheritance.Diamond.Root")).to.deep.equal([
+                "sample.inheritance.Diamond.ChildA",
+                "sample.inheritance.Diamond.ChildB",
+                "sample.inheritance.Diamond.ChildC",
+            ]);
+        });
+
+        it("should find subtypes of a chain", () => {
+            expect(hierarchy.subtypes("sample.inheritance.Linear.Base")).to.deep.equal([
+                "sample.inheritance.Linear.A",
+                "sample.inheritance.Linear.B",
+                "sample.inheritance.Linear.C",
+            ]);
+            expect(hierarchy.supertypes("sample.inheritance.Linear.C")).to.deep.equal([
+                "sample.inheritance.Linear.B",
+                "sample.inheritance.Linear.A",
+                "sample.inheritance.Linear.Base",
+            ]);
+        });
+
+        it("should find implementors of shared interfaces", () => {
+            expect(hierarchy.subtypes("sample.inheritance.ZigZag.Chain1")).to.deep.equal([
+                "sample.inheritance.ZigZag.Link1",
+                "sample.inheritance.ZigZag.Link4",
+            ]);
+            expect(hierarchy.supertypes("sample.inheritance.ZigZag.Link4")).to.deep.equal([
+                "sample.inheritance.ZigZag.Chain4",
+                "sample.inheritance.ZigZag.Chain1",
+            ]);
+            expect(hierarchy.subtypes("sample.inheritance.ZigZag.ChainUnused")).to.be.empty;
+        });
+
+        it("should return the same closure until a change", () => {
+            const supertypes = hierarchy.supertypes("sample.inheritance.Linear.C");
+            expect(hierarchy.supertypes("sample.inheritance.Linear.C")).to.equal(supertypes);
+        });
+    });
+
+    describe("invalidation", () => {
+        it("should only recompute closures through changed types", () => {
+            const hierarchy = createTypeHierarchy();
+            hierarchy.set("Diamond.java", resolveHierarchy(diamond));
+            hierarchy.set("Linear.java", resolveHierarchy(linear));
+
+            const diamondSupertypes = hierarchy.supertypes("sample.inheritance.Diamond.ChildC");
+            const linearSubtypes = hierarchy.subtypes("sample.inheritance.Linear.Base");
+            const version = hierarchy.version;
+
+            // C no longer extends B
+            const source = readFileSync("samples/sample/inheritance/Linear.java", "utf-8");
+            hierarchy.set("Linear.java", resolveHierarchy(parse(source.replace("class C extends B", "class C"))));
+
+            expect(hierarchy.version).to.not.equal(version);
+            expect(hierarchy.supertypes("sample.inheritance.Diamond.ChildC")).to.equal(diamondSupertypes);
+            expect(hierarchy.subtypes("sample.inheritance.Linear.Base")).to.not.equal(linearSubtypes);
+            expect(hierarchy.subtypes("sample.inheritance.Linear.Base")).to.deep.equal([
+                "sample.inheritance.Linear.A",
+                "sample.inheritance.Linear.B",
+            ]);
+            expect(hierarchy.supertypes("sample.inheritance.Linear.C")).to.be.empty;
+        });
+
+        it("should remove the types of a unit", () => {
+            const hierarchy = createTypeHierarchy();
+            hierarchy.set("Diamond.java", resolveHierarchy(diamond));
+
+            expect(hierarchy.subtypes("sample.inheritance.Diamond.Root")).to.have.lengthOf(3);
+            expect(hierarchy.delete("Diamond.java")).to.be.true;
+            expect(hierarchy.delete("Diamond.java")).to.be.false;
+            expect(hierarchy.subtypes("sample.inheritance.Diamond.Root")).to.be.empty;
+            expect(hierarchy.type("sample.inheritance.Diamond.ChildC")).to.be.null;
+        });
+
+        it("should restore shadowed types once the shadowing unit is removed", () => {
+            const entry = (superclass: string) => ({
+                qualifiedName: "test.Copy",
+                superclass,
+                interfaces: [],
+                permits: [],
+            });
+            const hierarchy = createTypeHierarchy();
+            hierarchy.set("a/Copy.java", [entry("test.BaseA")]);
+            hierarchy.set("b/Copy.java", [entry("test.BaseB")]);
+
+            expect(hierarchy.supertypes("test.Copy")).to.deep.equal(["test.BaseB"]);
+            expect(hierarchy.subtypes("test.BaseA")).to.be.empty;
+
+            expect(hierarchy.delete("b/Copy.java")).to.be.true;
+            expect(hierarchy.type("test.Copy")).to.deep.equal(entry("test.BaseA"));
+            expect(hierarchy.supertypes("test.Copy")).to.deep.equal(["test.BaseA"]);
+            expect(hierarchy.subtypes("test.BaseA")).to.deep.equal(["test.Copy"]);
+            expect(hierarchy.subtypes("test.BaseB")).to.be.empty;
+
+            hierarchy.set("a/Copy.java", []);
+            expect(hierarchy.type("test.Copy")).to.be.null;
+        });
+    });
+
+    describe("workspace", () => {
+        it("should resolve supertypes across units", () => {
+            const workspace = createWorkspace(externalRefs);
+            workspace.set("test/Child.java", parse("package test;\n\npublic class Child extends Parent {}"));
+
+            expect(workspace.hierarchy.supertypes("test.Child")).to.be.empty;
+
+            // the child looked up the missing parent, so it's resolved again
+            workspace.set("test/Parent.java", parse("package test;\n\npublic class Parent implements Runnable {}"));
+            expect(workspace.hierarchy.supertypes("test.Child")).to.deep.equal(["test.Parent", "java.lang.Runnable"]);
+            expect(workspace.hierarchy.subtypes("java.lang.Runnable")).to.deep.equal(["test.Parent", "test.Child"]);
+
+            workspace.delete("test/Parent.java");
+            expect(workspace.hierarchy.supertypes("test.Child")).to.be.empty;
+        });
+    });
+});
@@ -0,0 +1,291 @@
+import { ModuleGraph } from "./modules.js";
+import { ExternalTypeReference, LocalTypeReference, resolveTypeReference } from "./resolver.js";
+import { ExternalSymbolIndex } from "./symbol-index.js";
+import { CompilationUnit } from "./unit.js";
+
+/**
+ * The resolved supertype clauses of a type declaration.
+ *
+ * Supertypes that couldn't be resolved are left out.
+ */
+export interface HierarchyEntry {
+    /** The fully qualified name of the type. */
+    qualifiedName: string;
+    /** The fully qualified name of the superclass, null if there's no `extends` clause. */
+    superclass: string | null;
+    /** The fully qualified names of the implemented or extended interfaces, in declaration order. */
+    interfaces: string[];
+    /** The fully qualified names of the permitted subtypes, in declaration order. */
+    permits: string[];
+}
+
+/**
+ * Graph of the supertype relations between types.
+ */
+export interface TypeHierarchy {
+    /** A counter changed whenever the graph changes, for invalidating lookups cached elsewhere. */
+    readonly version: number;
+
+    /**
+     * Finds the declared supertypes of a type.
+     *
+     * @param qualifiedName - The fully qualified type name
+     * @returns The entry, or null if no indexed unit declares the type
+     */
+    type(qualifiedName: string): HierarchyEntry | null;
+
+    /**
+     * Finds the direct and indirect supertypes of a type.
+     *
+     * @param qualifiedName - The fully qualified type name
+     * @returns The supertypes breadth first, nearest first, superclasses before interfaces, each once
+     */
+    supertypes(qualifiedName: string): readonly string[];
+
+    /**
+     * Finds the direct and indirect subtypes of a type, e.g. every implementor of an interface.
+     *
+     * @param qualifiedName - The fully qualified type name
+     * @returns The subtypes breadth first, nearest first, each once
+     */
+    subtypes(qualifiedName: string): readonly string[];
+}
+
+/**
+ * Type hierarchy that can be updated one unit at a time.
+ */
+export interface MutableTypeHierarchy extends TypeHierarchy {
+    /**
+     * Indexes the types of a unit, replacing the entries of any unit with the same identifier.
+     *
+     * @param unitId - The unit identifier
+     * @param entries - The entries of the unit's types, e.g. from {@link resolveHierarchy}
+     */
+    set(unitId: string, entries: HierarchyEntry[]): void;
+
+    /**
+     * Removes the entries of a unit.
+     *
+     * @param unitId - The unit identifier
+     * @returns Whether the unit was indexed
+     */
+    delete(unitId: string): boolean;
+}
+
+/**
+ * Resolves the supertype clauses of the types declared in a compilation unit.
+ *
+ * @param unit - The compilation unit
+ * @param externalRefs - The references outside of the unit, e.g. a workspace's symbol table
+ * @param modules - The module exports, for resolving through module imports
+ * @returns The entries of the unit's types, in declaration order, module declarations left out
+ */
+export const resolveHierarchy = (
+    unit: CompilationUnit,
+    externalRefs: ExternalTypeReference[] | ExternalSymbolIndex = [],
+    modules: ModuleGraph | null = null
+): HierarchyEntry[] => {
+    const prefix = unit.packageName ? `${unit.packageName}.` : "";
+    const resolve = (refs: LocalTypeReference[]): string[] =>
+        refs.flatMap((ref) => resolveTypeReference(ref, unit, externalRefs, modules)?.qualifiedName ?? []);
+
+    return unit.types
+        .filter((type) => type.kind !== "module")
+        .map((type) => ({
+            qualifiedName: prefix + type.qualifiedName,
+            superclass: type.superclass ? (resolve([type.superclass])[0] ?? null) : null,
+            interfaces: resolve(type.interfaces),
+            permits: resolve(type.permits),
+        }));
+};
+
+// memoized closures over one direction of the graph, evicted by the types they went through
+const createClosureCache = (next: (name: string) => Iterable<string>) => {
+    const closures = new Map<string, string[]>();
+    // type -> types whose closure went through it, including itself
+    const visitors = new Map<string, Set<string>>();
+
+    const visit = (name: string, root: string) => {
+        let roots = visitors.get(name);
+        if (!roots) {
+            roots = new Set();
+            visitors.set(name, roots);
+        }
+        roots.add(root);
+    };
+
+    return {
+        get(root: string): readonly string[] {
+            let closure = closures.get(root);
+            if (!closure) {
+                const visited = new Set<string>([root]);
+                const queue = [root];
+                visit(root, root);
+                // breadth first, so nearer types come first
+                for (let i = 0; i < queue.length; i++) {
+                    for (const name of next(queue[i])) {
+                        if (!visited.has(name)) {
+                            visited.add(name);
+                            queue.push(name);
+                            visit(name, root);
+                        }
+                    }
+                }
+
+                closure = queue.slice(1);
+                closures.set(root, closure);
+            }
+            return closure;
+        },
+        // forgets every closure that went through a type, the others can't have changed
+        evict(name: string) {
+            const roots = visitors.get(name);
+            if (!roots) {
+                return;
+            }
+
+            for (const root of roots) {
+                const closure = closures.get(root);
+                if (closure) {
+                    closures.delete(root);
+                    for (const visited of [root, ...closure]) {
+                        visitors.get(visited)?.delete(root);
+                    }
+                }
+            }
+            visitors.delete(name);
+        },
+    };
+};
+
+const directSupertypes = (entry: HierarchyEntry | undefined): string[] =>
+    !entry ? [] : entry.superclass ? [entry.superclass, ...entry.interfaces] : entry.interfaces;
+
+/**
+ * Creates an empty type hierarchy.
+ *
+ * Transitive queries are computed on first use and kept until a unit changes the types they went through,
+ * so an edit only recomputes the closures touching the edited types.
+ * A type declared by several units has the entry set last, and the previous one again once that unit drops it.
+ *
+ * @returns The type hierarchy
+ */
+export const createTypeHierarchy = (): MutableTypeHierarchy => {
+    const types = new Map<string, HierarchyEntry>();
+    // supertype -> direct subtypes
+    const subtypes = new Map<string, Set<string>>();
+    // unit -> entries it declares, for removal
+    const declared = new Map<string, HierarchyEntry[]>();
+    // type -> entries declaring it, in the order they were set, the last one is linked
+    const declarations = new Map<string, HierarchyEntry[]>();
+    let version = 0;
+
+    const up = createClosureCache((name) => directSupertypes(types.get(name)));
+    const down = createClosureCache((name) => subtypes.get(name) ?? []);
+
+    const link = (entry: HierarchyEntry) => {
+        types.set(entry.qualifiedName, entry);
+        for (const supertype of directSupertypes(entry)) {
+            let subs = subtypes.get(supertype);
+            if (!subs) {
+                subs = new Set();
+                subtypes.set(supertype, subs);
+            }
+            subs.add(entry.qualifiedName);
+        }
+    };
+
+    const unlink = (entry: HierarchyEntry) => {
+        types.delete(entry.qualifiedName);
+        for (const supertype of directSupertypes(entry)) {
+            const subs = subtypes.get(supertype);
+            if (subs?.delete(entry.qualifiedName) && subs.size === 0) {
+                subtypes.delete(supertype);
+            }
+        }
+    };
+
+    // supertype closures change with the edges out of the changed types, subtype closures with the edges into
+    const evict = (entries: HierarchyEntry[]) => {
+        for (const entry of entries) {
+            up.evict(entry.qualifiedName);
+            for (const supertype of directSupertypes(entry)) {
+                down.evict(supertype);
+            }
+        }
+    };
+
+    // entries of a type may be shadowed by another unit declaring it too, the latest one wins
+    const add = (entry: HierarchyEntry) => {
+        const entries = declarations.get(entry.qualifiedName);
+        if (entries) {
+            const shadowed = entries[entries.length - 1];
+            evict([shadowed]);
+            unlink(shadowed);
+            entries.push(entry);
+        } else {
+            declarations.set(entry.qualifiedName, [entry]);
+        }
+        link(entry);
+    };
+
+    // a removed entry that shadowed others gives way to the latest of them
+    const drop = (entry: HierarchyEntry) => {
+        const entries = declarations.get(entry.qualifiedName);
+        const index = entries?.lastIndexOf(entry) ?? -1;
+        if (index === -1) {
+            return;
+        }
+
+        entries.splice(index, 1);
+        if (index !== entries.length) {
+            // shadowed, so not linked
+            return;
+        }
+
+        unlink(entry);
+        if (entries.length === 0) {
+            declarations.delete(entry.qualifiedName);
+            return;
+        }
+
+        const restored = entries[entries.length - 1];
+        evict([restored]);
+        link(restored);
+    };
+
+    const remove = (unitId: string): boolean => {
+        const entries = declared.get(unitId);
+        if (!entries) {
+            return false;
+        }
+
+        evict(entries);
+        for (const entry of entries) {
+            drop(entry);
+        }
+        declared.delete(unitId);
+        version++;
+        return true;
+    };
+
+    return {
+        get version() {
+            return version;
+        },
+        type: (qualifiedName: string) => types.get(qualifiedName) ?? null,
+        supertypes: (qualifiedName: string) => up.get(qualifiedName),
+        subtypes: (qualifiedName: string) => down.get(qualifiedName),
+        set(unitId: string, entries: HierarchyEntry[]) {
+            remove(unitId);
+
+            evict(entries);
+            for (const entry of entries) {
+                add(entry);
+            }
+            declared.set(unitId, entries);
+            version++;
+        },
+        delete: remove,
+    };
+};
@@ -1,3 +1,17 @@
+export * from "./cache.js";
+export * from "./class-index.js";
+export * from "./declarations.js";
+export * from "./dependencies.js";
+export * from "./hierarchy.js";
+export * from "./indexer.js";
+export * from "./modules.js";
+export * from "./observer.js";
 export * from "./resolver.js";
+export * from "./scope.js";
+export * from "./source-roots.js";
+export * from "./summary.js";
+export * from "./symbol-index.js";
 export * from "./tree-utils.js";
 export * from "./unit.js";
+export * from "./usages.js";
+export * from "./workspace.js";
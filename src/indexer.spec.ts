@@ -0,0 +1,183 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readFileSync } from "fs";
+import { MessageChannel, MessagePort, Worker } from "worker_threads";
+import { AnalysisCacheStore, createAnalysisCache } from "./cache.js";
+import { createIndexPool, handleIndexRequest, nodeWorkerPort, serveIndexRequests, SourceFile } from "./indexer.js";
+
+describe("Parallel indexing", () => {
+    const files: SourceFile[] = [
+        "samples/sample/inheritance/Linear.java",
+        "samples/sample/inheritance/Diamond.java",
+        "samples/sample/generics/GenericListWrapper.java",
+        "samples/sample/math/BinarySearch.java",
+        "samples/sample/string/StringsLong.java",
+    ].map((path) => ({ path, source: readFileSync(path, "utf-8") }));
+
+    describe("handleIndexRequest", () => {
+        it("should summarize every file in order", () => {
+            const response = handleIndexRequest(parser, { id: 7, files });
+
+            expect(response.id).to.equal(7);
+            expect(response.summaries).to.have.lengthOf(files.length);
+            expect(response.errors.every((e) => e === null)).to.be.true;
+            expect(response.summaries[0]?.packageName).to.equal("sample.inheritance");
+            expect(response.summaries[0]?.types.map((t) => t.qualifiedName)).to.include("Linear.Base");
+        });
+
+        it("should record collected references", () => {
+            const [summary] = handleIndexRequest(parser, { id: 0, files: [files[0]] }).summaries;
+
+            expect(summary.references.length).to.be.greaterThan(0);
+            expect(summary.references.length % 3).to.equal(0);
+            expect(summary.referenceNames).to.include.members(["Base", "A", "B", "C"]);
+            for (let i = 0; i < summary.references.length; i += 3) {
+                expect(summary.references[i]).to.be.lessThan(summary.references[i + 1]);
+                expect(summary.references[i + 2]).to.be.lessThan(summary.referenceNames.length);
+            }
+        });
+    });
+
+    describe("createIndexPool", () => {
+        const channels: MessagePort[] = [];
+        const createPorts = (count: number) =>
+            Array.from({ length: count }, () => {
+                const { port1, port2 } = new MessageChannel();
+                channels.push(port1, port2);
+
+                serveIndexRequests(parser, nodeWorkerPort(port2));
+                return nodeWorkerPort(port1);
+            });
+
+        after(() => {
+            for (const port of channels) {
+                port.close();
+            }
+        });
+
+        it("should merge summaries from all workers", async () => {
+            const pool = createIndexPool(createPorts(3));
+            const result = await pool.index(files, { batchSize: 1 });
+
+            expect(result.errors.size).to.equal(0);
+            expect([...result.summaries.keys()]).to.have.members(files.map((f) => f.path));
+            expect(result.symbols.byQualifiedName("sample.inheritance.Diamond.ChildC")).to.not.be.null;
+            expect(result.symbols.byPackage("sample.math", "BinarySearch")).to.not.be.null;
+        });
+
+        it("should transfer reference tables intact", async () => {
+            const pool = createIndexPool(createPorts(1));
+            const result = await pool.index(files.slice(0, 1));
+            const direct = handleIndexRequest(parser, { id: 0, files: files.slice(0, 1) }).summaries[0];
+
+            const summary = result.summaries.get(files[0].path);
+            expect(summary?.references).to.be.instanceOf(Int32Array);
+            expect(Array.from(summary?.references ?? [])).to.deep.equal(Array.from(direct.references));
+        });
+
+        it("should serve cached summaries without workers", async () => {
+            const entries = new Map<string, string>();
+            const store: AnalysisCacheStore = {
+                get: async (key) => entries.get(key) ?? null,
+                set: async (key, value) => {
+                    entries.set(key, value);
+                },
+                delete: async (key) => {
+                    entries.delete(key);
+                },
+            };
+
+            const cold = createAnalysisCache(store, "test");
+            await createIndexPool(createPorts(2)).index(files, { cache: cold });
+            expect(entries.size).to.equal(files.length);
+
+            const warm = createAnalysisCache(store, "test");
+            const result = await createIndexPool([]).index(files, { cache: warm });
+
+            expect(warm.stats.hits).to.equal(files.length);
+            expect(result.summaries.size).to.equal(files.length);
+            expect(result.symbols.byPackage("sample.math", "BinarySearch")).to.not.be.null;
+        });
+
+        it("should bound the cache reads in flight", async () => {
+            let reading = 0;
+            let maxReading = 0;
+            const store: AnalysisCacheStore = {
+                get: async () => {
+                    maxReading = Math.max(maxReading, ++reading);
+                    await new Promise((resolve) => setTimeout(resolve, 1));
+                    reading--;
+                    return null;
+                },
+                set: async () => {},
+                delete: async () => {},
+            };
+
+            const result = await createIndexPool(createPorts(1)).index(files, {
+                cache: createAnalysisCache(store, "test"),
+                cacheReads: 2,
+            });
+            expect(result.summaries.size).to.equal(files.length);
+            expect(maxReading).to.equal(2);
+        });
+
+        it("should fail on cache read errors rather than miss", async () => {
+            const store: AnalysisCacheStore = {
+                get: async () => {
+                    throw new Error("EMFILE: too many open files");
+                },
+                set: async () => {},
+                delete: async () => {},
+            };
+
+            let error: unknown = null;
+            try {
+                await createIndexPool(createPorts(1)).index(files, { cache: createAnalysisCache(store, "test") });
+            } catch (e) {
+                error = e;
+            }
+            expect(error).to.have.property("message", "EMFILE: too many open files");
+        });
+
+        // a real worker that exits as soon as it's sent a batch
+        const createExitingWorker = () =>
+            nodeWorkerPort(
+                new Worker('require("worker_threads").parentPort.once("message", () => process.exit(1));', {
+                    eval: true,
+                })
+            );
+
+        it("should hand batches of exited workers to the others", async () => {
+            const pool = createIndexPool([createExitingWorker(), ...createPorts(1)]);
+            const result = await pool.index(files, { batchSize: 1 });
+
+            expect(result.errors.size).to.equal(0);
+            expect([...result.summaries.keys()]).to.have.members(files.map((f) => f.path));
+
+            // the exited worker left the pool
+            expect((await pool.index(files)).summaries.size).to.equal(files.length);
+        });
+
+        it("should reject once every worker exited", async () => {
+            let error: unknown = null;
+            try {
+                await createIndexPool([createExitingWorker()]).index(files);
+            } catch (e) {
+                error = e;
+            }
+
+            expect(error).to.be.instanceOf(Error);
+        });
+
+        it("should reject without workers", async () => {
+            let error: unknown = null;
+            try {
+                await createIndexPool([]).index(files);
+            } catch (e) {
+                error = e;
+            }
+
+            expect(error).to.be.instanceOf(Error);
+        });
+    });
+});
@@ -0,0 +1,342 @@
+import { Parser } from "@lezer/common";
+import { AnalysisCache } from "./cache.js";
+import { parseDeclarations } from "./declarations.js";
+import { createExternalSymbolIndex, MutableExternalSymbolIndex } from "./symbol-index.js";
+import { summarizeUnit, UnitSummary } from "./summary.js";
+import { parseUnit } from "./unit.js";
+import { unitTypeReferences } from "./workspace.js";
+
+/**
+ * A source file to index.
+ */
+export interface SourceFile {
+    path: string;
+    source: string;
+}
+
+/**
+ * A batch of files sent to an indexing worker.
+ */
+export interface IndexRequest {
+    id: number;
+    files: SourceFile[];
+    /** Whether to parse only the declarations, see {@link IndexOptions.declarationsOnly}. */
+    declarationsOnly?: boolean;
+}
+
+/**
+ * The summaries of a batch, in request order.
+ *
+ * A file that failed to be indexed has a null summary and an error message.
+ */
+export interface IndexResponse {
+    id: number;
+    summaries: (UnitSummary | null)[];
+    errors: (string | null)[];
+}
+
+/**
+ * A message channel to an indexing worker, or from the main thread inside a worker.
+ *
+ * Use {@link nodeWorkerPort} or {@link webWorkerPort} to adapt `worker_threads` and Web Workers.
+ */
+export interface IndexWorkerPort {
+    postMessage(message: unknown, transfer?: ArrayBuffer[]): void;
+    onMessage(listener: (message: unknown) => void): void;
+    onError?(listener: (error: unknown) => void): void;
+    /** Listens for the worker exiting, after which it answers no more requests. */
+    onExit?(listener: () => void): void;
+}
+
+/**
+ * Adapts a `worker_threads` `Worker` or `parentPort` to an index worker port.
+ *
+ * @param worker - The worker or the parent port
+ * @returns The port
+ */
+export const nodeWorkerPort = (worker: {
+    postMessage(value: unknown, transferList?: readonly ArrayBuffer[]): void;
+    on(event: "message" | "error" | "exit", listener: (value: unknown) => void): unknown;
+}): IndexWorkerPort => ({
+    postMessage: (message, transfer) => worker.postMessage(message, transfer),
+    onMessage: (listener) => {
+        worker.on("message", listener);
+    },
+    onError: (listener) => {
+        worker.on("error", listener);
+    },
+    onExit: (listener) => {
+        // only workers emit it, a parent port never sees its worker exit
+        worker.on("exit", () => listener());
+    },
+});
+
+/**
+ * Adapts a Web `Worker`, or the worker global scope, to an index worker port.
+ *
+ * Web Workers don't signal exiting, a worker closing itself leaves its batch unanswered.
+ *
+ * @param worker - The worker or the worker global scope
+ * @returns The port
+ */
+export const webWorkerPort = (worker: {
+    postMessage(message: unknown, transfer: ArrayBuffer[]): void;
+    addEventListener(type: "message" | "error", listener: (event: { data?: unknown }) => void): void;
+}): IndexWorkerPort => ({
+    postMessage: (message, transfer = []) => worker.postMessage(message, transfer),
+    onMessage: (listener) => worker.addEventListener("message", (event) => listener(event.data)),
+    onError: (listener) => worker.addEventListener("error", listener),
+});
+
+/**
+ * Parses and summarizes a batch of files.
+ *
+ * @param parser - The Java parser, usually `@lezer/java`'s
+ * @param request - The batch
+ * @returns The summaries of the batch
+ */
+export const handleIndexRequest = (parser: Parser, request: IndexRequest): IndexResponse => {
+    const response: IndexResponse = { id: request.id, summaries: [], errors: [] };
+    for (const file of request.files) {
+        try {
+            const unit = request.declarationsOnly
+                ? parseDeclarations(parser, file.source)
+                : parseUnit(parser.parse(file.source), file.source);
+            response.summaries.push(summarizeUnit(unit));
+            response.errors.push(null);
+        } catch (e) {
+            response.summaries.push(null);
+            response.errors.push(e instanceof Error ? e.message : String(e));
+        }
+    }
+    return response;
+};
+
+/**
+ * Answers index requests coming through a port, to be called in the worker's entry point.
+ *
+ * @example
+ * ```typescript
+ * // worker.ts
+ * import { parser } from "@lezer/java";
+ * import { parentPort } from "node:worker_threads";
+ *
+ * serveIndexRequests(parser, nodeWorkerPort(parentPort));
+ * ```
+ *
+ * @param parser - The Java parser, usually `@lezer/java`'s
+ * @param port - The port to the main thread
+ */
+export const serveIndexRequests = (parser: Parser, port: IndexWorkerPort) => {
+    port.onMessage((message) => {
+        const response = handleIndexRequest(parser, message as IndexRequest);
+
+        // reference tables are moved, not copied
+        const transfer = response.summaries.filter(Boolean).map((s) => s.references.buffer as ArrayBuffer);
+        port.postMessage(response, transfer);
+    });
+};
+
+/**
+ * Options for parallel indexing.
+ */
+export interface IndexOptions {
+    /** The number of files sent to a worker at once, defaults to 16. */
+    batchSize?: number;
+    /** A summary cache, files found in it are not sent to workers and new summaries are written back. */
+    cache?: AnalysisCache;
+    /** The number of cache reads in flight at once, defaults to 64, so large inputs don't exhaust file handles. */
+    cacheReads?: number;
+    /**
+     * Whether to skip method, initializer and lambda bodies, for building a symbol table only.
+     *
+     * The summaries have the same package, imports and nameable types, but no references within the skipped bodies.
+     * They are not written to the cache, cached full summaries are still used.
+     */
+    declarationsOnly?: boolean;
+}
+
+/**
+ * The merged result of indexing.
+ */
+export interface IndexResult {
+    /** The unit summaries, by path. */
+    summaries: Map<string, UnitSummary>;
+    /** The error messages of files that couldn't be indexed, by path. */
+    errors: Map<string, string>;
+    /** A symbol index of the types declared by every summarized unit. */
+    symbols: MutableExternalSymbolIndex;
+}
+
+/**
+ * A pool of indexing workers.
+ */
+export interface IndexPool {
+    /**
+     * Indexes source files, spreading batches over the pool's workers as they become idle.
+     *
+     * With a cache whose entries are all fresh, no file is sent to a worker at all.
+     *
+     * @param files - The files to index
+     * @param options - Optional indexing options
+     * @returns The merged summaries and symbol index
+     */
+    index(files: SourceFile[], options?: IndexOptions): Promise<IndexResult>;
+}
+
+interface PendingRequest {
+    port: IndexWorkerPort;
+    // null once the worker exited without answering
+    resolve: (response: IndexResponse | null) => void;
+    reject: (error: unknown) => void;
+}
+
+/**
+ * Creates a pool over workers serving index requests with {@link serveIndexRequests}.
+ *
+ * A worker that exits leaves the pool, and the batch it was indexing is handed to the remaining workers.
+ * Indexing fails once no worker is left.
+ *
+ * @param ports - The ports to the workers
+ * @returns The pool
+ */
+export const createIndexPool = (ports: IndexWorkerPort[]): IndexPool => {
+    let nextId = 0;
+    const pending = new Map<number, PendingRequest>();
+
+    const exited = new Set<IndexWorkerPort>();
+
+    for (const port of ports) {
+        port.onMessage((message) => {
+            const response = message as IndexResponse;
+            const request = pending.get(response.id);
+            if (request) {
+                pending.delete(response.id);
+                request.resolve(response);
+            }
+        });
+        port.onError?.((error) => {
+            for (const [id, request] of pending) {
+                if (request.port === port) {
+                    pending.delete(id);
+                    request.reject(error);
+                }
+            }
+        });
+        port.onExit?.(() => {
+            exited.add(port);
+            for (const [id, request] of pending) {
+                if (request.port === port) {
+                    pending.delete(id);
+                    request.resolve(null);
+                }
+            }
+        });
+    }
+
+    const send = (port: IndexWorkerPort, files: SourceFile[], declarationsOnly: boolean) =>
+        new Promise<IndexResponse | null>((resolve, reject) => {
+            if (exited.has(port)) {
+                resolve(null);
+                return;
+            }
+
+            const request: IndexRequest = { id: nextId++, files, declarationsOnly };
+            pending.set(request.id, { port, resolve, reject });
+            port.postMessage(request);
+        });
+
+    return {
+        async index(files: SourceFile[], options: IndexOptions = {}) {
+            const { cache, declarationsOnly = false } = options;
+            const batchSize = Math.max(1, options.batchSize ?? 16);
+            const result: IndexResult = {
+                summaries: new Map(),
+                errors: new Map(),
+                symbols: createExternalSymbolIndex(),
+            };
+
+            let pendingFiles = files;
+            if (cache) {
+                const cached: (UnitSummary | null)[] = [];
+                let next = 0;
+                const read = async () => {
+                    while (next < files.length) {
+                        const i = next++;
+                        cached[i] = await cache.get(files[i].source);
+                    }
+                };
+                await Promise.all(Array.from({ length: Math.max(1, options.cacheReads ?? 64) }, read));
+
+                pendingFiles = files.filter((file, i) => {
+                    if (cached[i]) {
+                        result.summaries.set(file.path, cached[i]);
+                        return false;
+                    }
+                    return true;
+                });
+            }
+
+            const live = () => ports.filter((port) => !exited.has(port));
+            if (pendingFiles.length > 0 && live().length === 0) {
+                throw new Error("No workers to index with");
+            }
+
+            // workers pull the next batch when done, so slow files don't stall the others
+            let offset = 0;
+            // batches of workers that exited before answering
+            const requeued: SourceFile[][] = [];
+            const run = async (port: IndexWorkerPort) => {
+                while (requeued.length > 0 || offset < pendingFiles.length) {
+                    let batch = requeued.pop();
+                    if (!batch) {
+                        batch = pendingFiles.slice(offset, offset + batchSize);
+                        offset += batch.length;
+                    }
+
+                    const response = await send(port, batch, declarationsOnly);
+                    if (!response) {
+                        requeued.push(batch);
+                        return;
+                    }
+
+                    // written before the next batch, so writes in flight are bounded by the batches in flight
+                    const writes: Promise<void>[] = [];
+                    for (let i = 0; i < batch.length; i++) {
+                        const summary = response.summaries[i];
+                        if (summary) {
+                            result.summaries.set(batch[i].path, summary);
+                            if (cache && !declarationsOnly) {
+                                writes.push(cache.set(batch[i].source, summary));
+                            }
+                        } else {
+                            result.errors.set(batch[i].path, response.errors[i] ?? "unknown error");
+                        }
+                    }
+                    await Promise.all(writes);
+                }
+            };
+
+            await Promise.all(live().map(run));
+            // workers that finished early may have stopped before another one exited
+            while (requeued.length > 0) {
+                const remaining = live();
+                if (remaining.length === 0) {
+                    throw new Error("Every indexing worker exited");
+                }
+                await Promise.all(remaining.map(run));
+            }
+
+            // merge in input order, so duplicate names resolve the same regardless of worker timing
+            for (const file of files) {
+                const summary = result.summaries.get(file.path);
+                if (summary) {
+                    for (const ref of unitTypeReferences(summary)) {
+                        result.symbols.add(ref);
+                    }
+                }
+            }
+            return result;
+        },
+    };
+};
@@ -0,0 +1,154 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { createModuleGraph } from "./modules.js";
+import { createTypeReferenceResolver } from "./resolver.js";
+import { parseUnit } from "./unit.js";
+import { createWorkspace } from "./workspace.js";
+
+const parse = (source: string) => parseUnit(parser.parse(source), source);
+
+describe("Module graph", () => {
+    const base = { name: "java.base", exports: ["java.lang", "java.util"], requiresTransitive: [] as string[] };
+    const desktop = { name: "java.desktop", exports: ["java.awt"], requiresTransitive: ["java.datatransfer"] };
+    const datatransfer = { name: "java.datatransfer", exports: ["java.awt.datatransfer"], requiresTransitive: [] };
+
+    describe("parseUnit", () => {
+        it("should extract exports and transitive requires", () => {
+            const unit = parse(`module com.example.app {
+    requires java.sql;
+    requires transitive com.example.api;
+    requires static transitive com.example.spi;
+    exports com.example.app;
+    exports com.example.app.internal to com.example.test; // qualified
+    /* exports com.example.hidden; */
+    exports /* spread */
+        com.example.app.api;
+    requires // over lines
+        transitive com.example.core;
+    opens com.example.app.model;
+    uses com.example.spi.Plugin;
+}`);
+
+            expect(unit.module).to.deep.equal({
+                name: "com.example.app",
+                exports: ["com.example.app", "com.example.app.api"],
+                requiresTransitive: ["com.example.api", "com.example.spi", "com.example.core"],
+            });
+        });
+
+        it("should leave other units without a module", () => {
+            expect(parse("package test; class Main {}").module).to.be.null;
+        });
+    });
+
+    describe("createModuleGraph", () => {
+        it("should close exports over transitive requires", () => {
+            const graph = createModuleGraph([base, desktop, datatransfer]);
+
+            expect(graph.exportedPackages("java.base")).to.deep.equal(["java.lang", "java.util"]);
+            expect(graph.exportedPackages("java.desktop")).to.deep.equal(["java.awt", "java.awt.datatransfer"]);
+            expect(graph.exportedPackages("java.sql")).to.be.null;
+        });
+
+        it("should terminate on cycles", () => {
+            const graph = createModuleGraph([
+                { name: "a", exports: ["a"], requiresTransitive: ["b"] },
+                { name: "b", exports: ["b"], requiresTransitive: ["a"] },
+            ]);
+
+            expect(graph.exportedPackages("a")).to.deep.equal(["a", "b"]);
+            expect(graph.exportedPackages("b")).to.deep.equal(["b", "a"]);
+        });
+
+        it("should find the modules requiring a module", () => {
+            const graph = createModuleGraph([base, desktop, datatransfer]);
+
+            expect(graph.dependentModules("java.datatransfer")).to.deep.equal(["java.datatransfer", "java.desktop"]);
+            expect(graph.dependentModules("java.base")).to.deep.equal(["java.base"]);
+            expect(graph.dependentModules("java.sql")).to.deep.equal(["java.sql"]);
+        });
+
+        it("should recompute closures after changes", () => {
+            const graph = createModuleGraph([desktop]);
+            const closure = graph.exportedPackages("java.desktop");
+            expect(closure).to.deep.equal(["java.awt"]);
+            // the same array until a change, so lookups cached by it stay valid
+            expect(graph.exportedPackages("java.desktop")).to.equal(closure);
+
+            const version = graph.version;
+            graph.set(datatransfer);
+            expect(graph.version).to.not.equal(version);
+            expect(graph.exportedPackages("java.desktop")).to.not.equal(closure);
+            expect(graph.exportedPackages("java.desktop")).to.deep.equal(["java.awt", "java.awt.datatransfer"]);
+
+            expect(graph.delete("java.datatransfer")).to.be.true;
+            expect(graph.delete("java.datatransfer")).to.be.false;
+            expect(graph.exportedPackages("java.desktop")).to.deep.equal(["java.awt"]);
+        });
+    });
+
+    describe("module imports", () => {
+        const source = `package test;
+
+import module java.desktop;
+
+class Main {
+    Frame frame;
+    Clipboard clipboard;
+}`;
+        const refs = [
+            { name: "Frame", qualifiedName: "java.awt.Frame", packageName: "java.awt", moduleName: "java.desktop" },
+            {
+                name: "Clipboard",
+                qualifiedName: "java.awt.datatransfer.Clipboard",
+                packageName: "java.awt.datatransfer",
+                moduleName: "java.datatransfer",
+            },
+        ];
+        const resolved = (names: (string | undefined)[]) => names.filter((name) => name?.startsWith("java.awt"));
+
+        it("should resolve through transitively exported packages", () => {
+            const graph = createModuleGraph([desktop, datatransfer]);
+            const resolver = createTypeReferenceResolver(parse(source), refs, graph);
+
+            expect(resolved(resolver.resolveAll().map((r) => r.qualifiedName))).to.deep.equal([
+                "java.awt.Frame",
+                "java.awt.datatransfer.Clipboard",
+            ]);
+        });
+
+        it("should fall back to module names of unknown modules", () => {
+            const resolver = createTypeReferenceResolver(parse(source), refs);
+
+            expect(resolved(resolver.resolveAll().map((r) => r.qualifiedName))).to.deep.equal(["java.awt.Frame"]);
+        });
+    });
+
+    describe("workspace", () => {
+        const importer = (name: string, moduleName: string) =>
+            parse(`package test;\n\nimport module ${moduleName};\n\nclass ${name} { Frame frame; }`);
+
+        it("should only invalidate importers of changed modules", () => {
+            const workspace = createWorkspace([], [base]);
+            workspace.set("test/Desktop.java", importer("Desktop", "java.desktop"));
+            workspace.set("test/Base.java", importer("Base", "java.base"));
+            workspace.createResolver("test/Desktop.java").resolveAll();
+            workspace.createResolver("test/Base.java").resolveAll();
+
+            expect(workspace.set("datatransfer/module-info.java", parse("module java.datatransfer {}"))).to.be.empty;
+            expect(
+                workspace.set(
+                    "desktop/module-info.java",
+                    parse(`module java.desktop { requires transitive java.datatransfer; exports java.awt; }`)
+                )
+            ).to.deep.equal(["test/Desktop.java"]);
+            // through the transitive requires of the desktop module
+            expect(
+                workspace.set(
+                    "datatransfer/module-info.java",
+                    parse(`module java.datatransfer { exports java.awt.datatransfer; }`)
+                )
+            ).to.deep.equal(["test/Desktop.java"]);
+        });
+    });
+});
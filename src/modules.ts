@@ -0,0 +1,159 @@
+/**
+ * The directives of a module declaration that decide what `import module` makes visible.
+ */
+export interface ModuleInfo {
+    /** The module name, e.g. `java.base`. */
+    name: string;
+    /** The packages exported to every module, qualified `exports ... to` directives are left out. */
+    exports: string[];
+    /** The modules required with `requires transitive`, whose exports are visible through this module too. */
+    requiresTransitive: string[];
+}
+
+/**
+ * Lookup table from module names to the packages an `import module` of them makes visible.
+ */
+export interface ModuleGraph {
+    /** A counter changed whenever the modules change, for invalidating lookups cached elsewhere. */
+    readonly version: number;
+
+    /**
+     * Finds the packages visible through an `import module` declaration,
+     * i.e. the packages exported by the module and by the modules it requires transitively, recursively.
+     * The same array is returned until the graph changes, so lookups can be cached by it.
+     *
+     * @param moduleName - The module name
+     * @returns The packages in directive order, the module's own exports first, or null if the module isn't known
+     */
+    exportedPackages(moduleName: string): readonly string[] | null;
+
+    /**
+     * Finds the modules whose exported packages go through a module,
+     * i.e. the module and the modules requiring it transitively, recursively.
+     *
+     * @param moduleName - The module name, which doesn't need to be known
+     * @returns The module names, the module itself first
+     */
+    dependentModules(moduleName: string): string[];
+}
+
+/**
+ * Module graph that can be updated in place.
+ */
+export interface MutableModuleGraph extends ModuleGraph {
+    /**
+     * Adds a module, replacing any module with the same name.
+     *
+     * @param module - The module
+     */
+    set(module: ModuleInfo): void;
+
+    /**
+     * Removes a module.
+     *
+     * @param moduleName - The module name
+     * @returns Whether the module was known
+     */
+    delete(moduleName: string): boolean;
+}
+
+/**
+ * Creates a module graph.
+ *
+ * Closures are computed on first lookup and kept until the next change,
+ * required modules that aren't known contribute no packages.
+ *
+ * @param modules - The modules to start with
+ * @returns The module graph
+ */
+export const createModuleGraph = (modules: Iterable<ModuleInfo> = []): MutableModuleGraph => {
+    const byName = new Map<string, ModuleInfo>();
+    for (const module of modules) {
+        byName.set(module.name, module);
+    }
+
+    // module name -> transitively closed exports
+    const closures = new Map<string, string[]>();
+    let version = 0;
+
+    const close = (root: ModuleInfo): string[] => {
+        const packages = new Set<string>();
+        const visited = new Set<string>([root.name]);
+        const queue = [root];
+        // breadth first, so the module's own exports come before those of the modules it requires
+        for (let i = 0; i < queue.length; i++) {
+            const module = queue[i];
+            for (const pkg of module.exports) {
+                packages.add(pkg);
+            }
+            for (const required of module.requiresTransitive) {
+                const next = byName.get(required);
+                if (next && !visited.has(required)) {
+                    visited.add(required);
+                    queue.push(next);
+                }
+            }
+        }
+        return Array.from(packages);
+    };
+
+    return {
+        get version() {
+            return version;
+        },
+        exportedPackages(moduleName: string) {
+            let packages = closures.get(moduleName);
+            if (!packages) {
+                const module = byName.get(moduleName);
+                if (!module) {
+                    return null;
+                }
+
+                packages = close(module);
+                closures.set(moduleName, packages);
+            }
+            return packages;
+        },
+        dependentModules(moduleName: string) {
+            // required module -> modules requiring it
+            const requirers = new Map<string, string[]>();
+            for (const module of byName.values()) {
+                for (const required of module.requiresTransitive) {
+                    const names = requirers.get(required);
+                    if (names) {
+                        names.push(module.name);
+                    } else {
+                        requirers.set(required, [module.name]);
+                    }
+                }
+            }
+
+            const visited = new Set<string>([moduleName]);
+            const queue = [moduleName];
+            for (let i = 0; i < queue.length; i++) {
+                for (const name of requirers.get(queue[i]) ?? []) {
+                    if (!visited.has(name)) {
+                        visited.add(name);
+                        queue.push(name);
+                    }
+                }
+            }
+            return queue;
+        },
+        set(module: ModuleInfo) {
+            byName.set(module.name, module);
+            // any closure may go through the module
+            closures.clear();
+            version++;
+        },
+        delete(moduleName: string) {
+            if (!byName.delete(moduleName)) {
+                return false;
+            }
+
+            closures.clear();
+            version++;
+            return true;
+        },
+    };
+};
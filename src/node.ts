@@ -0,0 +1,138 @@
+import { existsSync, readdirSync, readFileSync } from "fs";
+import { mkdir, open, readFile, rename, rm, writeFile } from "fs/promises";
+import { join } from "path";
+import { AnalysisCacheStore } from "./cache.js";
+import { ClassIndex, ClassIndexOptions, RandomAccessSource, readClassIndex } from "./class-index.js";
+import { SourceFile } from "./indexer.js";
+import { SourceRootProvider } from "./source-roots.js";
+
+// Node.js-specific helpers, exported separately as `@katana-project/laser/node` to keep the main entry portable
+
+let tempCounter = 0;
+
+/**
+ * Creates a cache store keeping one file per entry in a directory.
+ *
+ * Entries are written to a temporary file first and renamed into place,
+ * so concurrent processes never observe partially written entries.
+ * Only missing files are misses, other read errors, e.g. running out of file descriptors, are thrown.
+ *
+ * @param directory - The cache directory, created when needed
+ * @returns The store
+ */
+export const createFileCacheStore = (directory: string): AnalysisCacheStore => {
+    let created: Promise<unknown> | null = null;
+
+    return {
+        async get(key: string) {
+            try {
+                return await readFile(join(directory, `${key}.json`), "utf-8");
+            } catch (e) {
+                // a missing entry, or a missing directory before the first write, other failures aren't misses
+                if (e?.code === "ENOENT" || e?.code === "ENOTDIR") {
+                    return null;
+                }
+                throw e;
+            }
+        },
+        async set(key: string, value: string) {
+            created ??= mkdir(directory, { recursive: true });
+            await created;
+
+            const path = join(directory, `${key}.json`);
+            const tempPath = `${path}.${process.pid}.${tempCounter++}.tmp`;
+            await writeFile(tempPath, value, "utf-8");
+            await rename(tempPath, path);
+        },
+        async delete(key: string) {
+            await rm(join(directory, `${key}.json`), { force: true });
+        },
+    };
+};
+
+/**
+ * Random access source over a file, to be closed when done.
+ */
+export interface FileSource extends RandomAccessSource {
+    close(): Promise<void>;
+}
+
+/**
+ * Opens a file for random access reads.
+ *
+ * @param path - The file path
+ * @returns The source
+ */
+export const openFileSource = async (path: string): Promise<FileSource> => {
+    const handle = await open(path, "r");
+    const { size } = await handle.stat();
+
+    return {
+        size,
+        async read(offset: number, length: number) {
+            const buffer = new Uint8Array(length);
+            const { bytesRead } = await handle.read(buffer, 0, length, offset);
+            return buffer.subarray(0, bytesRead);
+        },
+        close: () => handle.close(),
+    };
+};
+
+/**
+ * Reads the types of a JAR or JMOD file.
+ *
+ * @param path - The archive path
+ * @param options - Optional reading options
+ * @returns The types of the archive
+ */
+export const readClassIndexFile = async (path: string, options?: ClassIndexOptions): Promise<ClassIndex> => {
+    const source = await openFileSource(path);
+    try {
+        return await readClassIndex(source, options);
+    } finally {
+        await source.close();
+    }
+};
+
+/**
+ * Creates a provider of source files by package over source directories, e.g. `src/main/java`.
+ *
+ * Package directories are listed and read synchronously when asked for, as lookups during resolution are synchronous.
+ *
+ * @param roots - The source root directories
+ * @returns The provider
+ */
+export const createSourceRootProvider = (roots: string[]): SourceRootProvider => ({
+    packageFiles(packageName: string) {
+        const files: SourceFile[] = [];
+        for (const root of roots) {
+            const directory = packageName ? join(root, ...packageName.split(".")) : root;
+
+            let names: string[];
+            try {
+                names = readdirSync(directory);
+            } catch {
+                // no such package in this root
+                continue;
+            }
+
+            for (const name of names.sort()) {
+                if (name.endsWith(".java") && name !== "package-info.java" && name !== "module-info.java") {
+                    const path = join(directory, name);
+                    files.push({ path, source: readFileSync(path, "utf-8") });
+                }
+            }
+        }
+        return files;
+    },
+    moduleFiles() {
+        const files: SourceFile[] = [];
+        for (const root of roots) {
+            const path = join(root, "module-info.java");
+            if (existsSync(path)) {
+                files.push({ path, source: readFileSync(path, "utf-8") });
+            }
+        }
+        return files;
+    },
+});
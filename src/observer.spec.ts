@@ -0,0 +1,78 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readFileSync } from "fs";
+import {
+    AnalysisObserver,
+    createMetricsObserver,
+    createPerformanceTimelineObserver,
+    setAnalysisObserver,
+} from "./observer.js";
+import { createTypeReferenceResolver } from "./resolver.js";
+import { parseUnit } from "./unit.js";
+
+describe("Analysis observer", () => {
+    const source = readFileSync("samples/sample/generics/GenericListWrapper.java", "utf-8");
+    const tree = parser.parse(source);
+    const refs = [
+        { name: "List", qualifiedName: "java.util.List", packageName: "java.util", moduleName: null },
+        { name: "String", qualifiedName: "java.lang.String", packageName: "java.lang", moduleName: null },
+    ];
+
+    afterEach(() => {
+        setAnalysisObserver(null);
+    });
+
+    it("should report phases, resolution paths and memo lookups", () => {
+        const observer = createMetricsObserver();
+        expect(setAnalysisObserver(observer)).to.be.null;
+
+        const resolver = createTypeReferenceResolver(parseUnit(tree, source), refs);
+        const resolved = resolver.resolveAll();
+
+        const { phases, paths, cache } = observer.metrics;
+        expect(phases.extract.calls).to.equal(1);
+        expect(phases.extract.count).to.be.greaterThan(0);
+        expect(phases.collect.calls).to.equal(1);
+        expect(phases.resolve.calls).to.equal(1);
+        expect(phases.resolve.count).to.equal(phases.collect.count);
+        expect(phases.resolve.time).to.be.at.least(0);
+
+        // every reference is either resolved or looked up from the memo
+        const total = Object.values(paths).reduce((a, b) => a + b, 0);
+        expect(total + cache.hits).to.equal(phases.collect.count);
+        expect(resolved.length).to.be.greaterThan(0);
+        expect(cache.hits).to.equal(resolver.cacheStats.hits);
+        expect(cache.misses).to.equal(resolver.cacheStats.misses);
+        expect(observer.hitRate()).to.be.within(0, 1);
+
+        observer.reset();
+        expect(observer.metrics.phases.resolve.calls).to.equal(0);
+    });
+
+    it("should report nothing once removed", () => {
+        const events: string[] = [];
+        const observer: AnalysisObserver = {
+            phase: (phase) => events.push(phase),
+            resolution: (path) => events.push(path),
+        };
+
+        setAnalysisObserver(observer);
+        createTypeReferenceResolver(parseUnit(tree, source), refs).resolveAll();
+        expect(events).to.include.members(["extract", "collect", "resolve", "builtin"]);
+
+        events.length = 0;
+        expect(setAnalysisObserver(null)).to.equal(observer);
+        createTypeReferenceResolver(parseUnit(tree, source), refs).resolveAll();
+        expect(events).to.be.empty;
+    });
+
+    it("should measure phases on the performance timeline", () => {
+        setAnalysisObserver(createPerformanceTimelineObserver("laser-test"));
+        parseUnit(tree, source);
+
+        const entries = performance.getEntriesByName("laser-test:extract", "measure");
+        expect(entries).to.have.lengthOf(1);
+        expect((entries[0] as PerformanceMeasure).detail.count).to.be.greaterThan(0);
+        performance.clearMeasures("laser-test:extract");
+    });
+});
@@ -0,0 +1,217 @@
+import { Tree } from "@lezer/common";
+
+/**
+ * An instrumented phase of the analysis.
+ *
+ * - `parse` - incremental reparsing in {@link updateUnit}, counting the nodes of the new tree
+ * - `extract` - extraction of imports, types and scopes from a tree, counting its nodes
+ * - `collect` - collection of a unit's type references, counting the references
+ * - `resolve` - resolution of a batch of references, counting the references
+ */
+export type AnalysisPhase = "parse" | "extract" | "collect" | "resolve";
+
+/**
+ * The way a type reference was resolved, or `unresolved`.
+ *
+ * `scoped` covers types and type parameters declared by an enclosing scope, `declared` other types of the unit,
+ * `qualified` fully qualified names of external types, `package` types of the unit's own package.
+ */
+export type ResolutionPath =
+    | "builtin"
+    | "scoped"
+    | "qualified"
+    | "declared"
+    | "imported"
+    | "wildcard"
+    | "module"
+    | "package"
+    | "java.lang"
+    | "unresolved";
+
+/**
+ * Receiver of analysis events, every callback is optional.
+ */
+export interface AnalysisObserver {
+    /**
+     * Called after a phase ended.
+     *
+     * @param phase - The phase
+     * @param start - The start time, as in `performance.now()`
+     * @param end - The end time, as in `performance.now()`
+     * @param count - The number of nodes or references processed, see {@link AnalysisPhase}
+     */
+    phase?(phase: AnalysisPhase, start: number, end: number, count: number): void;
+
+    /**
+     * Called after a type reference was resolved, i.e. not answered from a resolver's memo.
+     *
+     * @param path - The way the reference was resolved
+     */
+    resolution?(path: ResolutionPath): void;
+
+    /**
+     * Called after a resolver looked up its memo.
+     *
+     * @param hit - Whether the resolution was memoized
+     */
+    cache?(hit: boolean): void;
+}
+
+let observer: AnalysisObserver | null = null;
+
+/**
+ * Gets the installed observer, instrumented code checks it before doing any measuring.
+ *
+ * @returns The observer, or null if instrumentation is disabled
+ */
+export const getAnalysisObserver = (): AnalysisObserver | null => observer;
+
+/**
+ * Installs the observer receiving analysis events from now on, replacing the previous one.
+ *
+ * Without an observer no time is taken and nothing is counted.
+ *
+ * @param next - The observer, null to disable instrumentation
+ * @returns The previously installed observer
+ */
+export const setAnalysisObserver = (next: AnalysisObserver | null): AnalysisObserver | null => {
+    const prev = observer;
+    observer = next;
+    return prev;
+};
+
+/**
+ * Counts the nodes of a tree, for phase reports.
+ *
+ * @param tree - The tree
+ * @returns The number of nodes, including the top node
+ */
+export const countNodes = (tree: Tree): number => {
+    let count = 0;
+    tree.iterate({
+        enter() {
+            count++;
+        },
+    });
+    return count;
+};
+
+/**
+ * Creates an observer reporting phases to the performance timeline, as `performance.measure` entries.
+ *
+ * The entries are named `<prefix>:<phase>` and carry the count as `detail.count`.
+ *
+ * @param prefix - The entry name prefix
+ * @returns The observer
+ */
+export const createPerformanceTimelineObserver = (prefix: string = "laser"): AnalysisObserver => ({
+    phase(phase: AnalysisPhase, start: number, end: number, count: number) {
+        performance.measure(`${prefix}:${phase}`, { start, end, detail: { count } });
+    },
+});
+
+/**
+ * Timings of a phase.
+ */
+export interface PhaseMetrics {
+    /** The number of times the phase ran. */
+    calls: number;
+    /** The total time spent, in milliseconds. */
+    time: number;
+    /** The longest single run, in milliseconds. */
+    maxTime: number;
+    /** The total number of nodes or references processed. */
+    count: number;
+}
+
+/**
+ * Aggregated analysis metrics.
+ */
+export interface AnalysisMetrics {
+    phases: Record<AnalysisPhase, PhaseMetrics>;
+    paths: Record<ResolutionPath, number>;
+    cache: { hits: number; misses: number };
+}
+
+/**
+ * Observer aggregating the events it receives into metrics.
+ */
+export interface MetricsObserver extends AnalysisObserver {
+    /** The metrics so far, updated in place. */
+    readonly metrics: AnalysisMetrics;
+
+    /**
+     * Computes the share of memo lookups that were hits.
+     *
+     * @returns The hit rate, between 0 and 1, or 0 without lookups
+     */
+    hitRate(): number;
+
+    /**
+     * Resets the metrics to zero.
+     */
+    reset(): void;
+}
+
+const PHASES: AnalysisPhase[] = ["parse", "extract", "collect", "resolve"];
+const PATHS: ResolutionPath[] = [
+    "builtin",
+    "scoped",
+    "qualified",
+    "declared",
+    "imported",
+    "wildcard",
+    "module",
+    "package",
+    "java.lang",
+    "unresolved",
+];
+
+const emptyMetrics = (): AnalysisMetrics => ({
+    phases: Object.fromEntries(
+        PHASES.map((phase) => [phase, { calls: 0, time: 0, maxTime: 0, count: 0 }])
+    ) as Record<AnalysisPhase, PhaseMetrics>,
+    paths: Object.fromEntries(PATHS.map((path) => [path, 0])) as Record<ResolutionPath, number>,
+    cache: { hits: 0, misses: 0 },
+});
+
+/**
+ * Creates an observer aggregating analysis events into metrics.
+ *
+ * @param next - An observer to forward the events to, e.g. a {@link createPerformanceTimelineObserver}
+ * @returns The observer
+ */
+export const createMetricsObserver = (next: AnalysisObserver | null = null): MetricsObserver => {
+    const metrics = emptyMetrics();
+
+    return {
+        metrics,
+        phase(phase: AnalysisPhase, start: number, end: number, count: number) {
+            const entry = metrics.phases[phase];
+            entry.calls++;
+            entry.time += end - start;
+            entry.maxTime = Math.max(entry.maxTime, end - start);
+            entry.count += count;
+            next?.phase?.(phase, start, end, count);
+        },
+        resolution(path: ResolutionPath) {
+            metrics.paths[path]++;
+            next?.resolution?.(path);
+        },
+        cache(hit: boolean) {
+            if (hit) {
+                metrics.cache.hits++;
+            } else {
+                metrics.cache.misses++;
+            }
+            next?.cache?.(hit);
+        },
+        hitRate() {
+            const lookups = metrics.cache.hits + metrics.cache.misses;
+            return lookups === 0 ? 0 : metrics.cache.hits / lookups;
+        },
+        reset() {
+            Object.assign(metrics, emptyMetrics());
+        },
+    };
+};
@@ -1,7 +1,14 @@
 import { parser } from "@run-slicer/lezer-java";
 import { expect } from "chai";
 import { readFileSync } from "fs";
-import { createTypeReferenceResolver } from "./resolver.js";
+import {
+    collectTypeReferences,
+    createTypeReferenceResolver,
+    RESOLVED_KINDS,
+    ResolvedType,
+    resolvedColumnsTransferList,
+    resolveTypeReference,
+} from "./resolver.js";
 import { parseUnit } from "./unit";
 
 describe("Type Reference Resolver", () => {
@@ -983,6 +990,28 @@ public class Test {
             expect(uniquePositions.size).to.equal(3);
         });
 
+        it("should collect references in document order on large files", () => {
+            const fields = Array.from({ length: 2000 }, (_, i) => `  private List<String> field${i};`).join("\n");
+            const source = `package test;
+import java.util.List;
+import java.lang.String;
+
+public class Large {
+${fields}
+}`;
+            const tree = parser.parse(source);
+            const unit = parseUnit(tree, source);
+            const resolver = createTypeReferenceResolver(unit);
+
+            const resolved = resolver.resolveAll();
+            expect(resolved.filter((r) => r.name === "List")).to.have.lengthOf(2000);
+            expect(resolved.filter((r) => r.name === "String")).to.have.lengthOf(2000);
+
+            for (let i = 1; i < resolved.length; i++) {
+                expect(resolved[i].ref.node.from).to.be.at.least(resolved[i - 1].ref.node.to);
+            }
+        });
+
         it("should resolve all types in complex generic scenarios", () => {
             const source = `package test;
 import java.util.List;
@@ -1030,6 +1059,262 @@ public class ComplexGenerics<T extends List<String>> {
         });
     });
 
+    describe("Scoped resolution", () => {
+        const source = `package test;
+
+import java.util.List;
+
+public class Scoped<T> {
+  class Entry {}
+
+  <E> List<E> wrap(E value, T other) {
+    class Entry {}
+    Entry local = null;
+    return null;
+  }
+
+  Entry member = null;
+}`;
+        const tree = parser.parse(source);
+        const unit = parseUnit(tree, source);
+        const externalRefs = [
+            { name: "T", qualifiedName: "test.T", packageName: "test", moduleName: null },
+            { name: "E", qualifiedName: "test.E", packageName: "test", moduleName: null },
+        ];
+        const resolver = createTypeReferenceResolver(unit, externalRefs);
+
+        it("should not resolve type parameters to same-package types", () => {
+            expect(resolver.resolveAt(source.indexOf("T other") + 1)).to.be.null;
+            expect(resolver.resolveAt(source.indexOf("E value") + 1)).to.be.null;
+            expect(resolver.resolveAt(source.indexOf("List<E>") + 1)?.qualifiedName).to.equal("java.util.List");
+        });
+
+        it("should resolve local types before member types", () => {
+            const local = resolver.resolveAt(source.indexOf("Entry local") + 1);
+            expect(local?.declaration?.from).to.equal(source.indexOf("class Entry {}\n    Entry"));
+
+            const member = resolver.resolveAt(source.indexOf("Entry member") + 1);
+            expect(member?.declaration?.from).to.equal(source.indexOf("class Entry"));
+            expect(member?.qualifiedName).to.equal("test.Scoped.Entry");
+        });
+    });
+
+    describe("resolveTypeReference", () => {
+        const source = `package test;
+
+import java.util.*;
+
+public class Arrays {
+  List<String> names;
+  Map<String, String> values;
+}`;
+        const unit = parseUnit(parser.parse(source), source);
+        const refs = collectTypeReferences(unit);
+        const find = (name: string) => refs.find((ref) => ref.name === name);
+
+        it("should resolve against the same array repeatedly", () => {
+            const externalRefs = [
+                { name: "List", qualifiedName: "java.util.List", packageName: "java.util", moduleName: "java.base" },
+            ];
+
+            expect(resolveTypeReference(find("List"), unit, externalRefs)?.qualifiedName).to.equal("java.util.List");
+            expect(resolveTypeReference(find("Map"), unit, externalRefs)).to.be.null;
+
+            // appending is picked up by the cached index
+            externalRefs.push({
+                name: "Map",
+                qualifiedName: "java.util.Map",
+                packageName: "java.util",
+                moduleName: "java.base",
+            });
+            expect(resolveTypeReference(find("Map"), unit, externalRefs)?.qualifiedName).to.equal("java.util.Map");
+        });
+    });
+
+    describe("resolveAt index", () => {
+        const source = readFileSync("samples/sample/generics/GenericsMisc.java", "utf-8");
+        const tree = parser.parse(source);
+        const unit = parseUnit(tree, source);
+
+        it("should agree with resolveAll inside and outside of references", () => {
+            const resolver = createTypeReferenceResolver(unit);
+            const resolved = resolver.resolveAll();
+
+            let next = 0;
+            for (let offset = 0; offset <= source.length; offset++) {
+                while (next < resolved.length && resolved[next].ref.node.to < offset) {
+                    next++;
+                }
+
+                const ref = resolved[next]?.ref;
+                if (!ref || offset < ref.node.from) {
+                    expect(resolver.resolveReferenceAt(offset), `offset ${offset}`).to.be.null;
+                } else if (offset > ref.node.from && offset < ref.node.to && !ref.node.firstChild) {
+                    const result = resolver.resolveAt(offset);
+                    expect(result?.qualifiedName, `offset ${offset}`).to.equal(resolved[next].qualifiedName);
+                    expect(result?.ref.node.from).to.equal(ref.node.from);
+                }
+            }
+        });
+
+        it("should resolve many offsets at once", () => {
+            const resolver = createTypeReferenceResolver(unit);
+            const offsets = Array.from({ length: 500 }, (_, i) => Math.floor((source.length * i) / 500));
+
+            const batch = resolver.resolveMany(offsets);
+            expect(batch).to.have.lengthOf(offsets.length);
+            expect(batch.some(Boolean)).to.be.true;
+            for (let i = 0; i < offsets.length; i++) {
+                const single = resolver.resolveAt(offsets[i]);
+                expect(batch[i]?.qualifiedName).to.equal(single?.qualifiedName);
+                expect(batch[i]?.ref.node.from).to.equal(single?.ref.node.from);
+            }
+        });
+    });
+
+    describe("resolveRange", () => {
+        const source = readFileSync("samples/sample/stream/StreamPersonMisc.java", "utf-8");
+        const tree = parser.parse(source);
+        const unit = parseUnit(tree, source);
+
+        const overlapping = (resolved: ResolvedType[], from: number, to: number) =>
+            resolved.filter((r) => r.ref.node.to >= from && r.ref.node.from <= to).map((r) => r.ref.node.from);
+
+        it("should resolve the references overlapping a range", () => {
+            const all = createTypeReferenceResolver(unit).resolveAll();
+
+            for (const [from, to] of [
+                [0, source.length],
+                [0, 0],
+                [Math.floor(source.length / 3), Math.floor(source.length / 2)],
+                [all[3].ref.node.from + 1, all[5].ref.node.to - 1],
+            ]) {
+                // once walking the tree, once from the collected references
+                const resolver = createTypeReferenceResolver(unit);
+                const walked = resolver.resolveRange(from, to);
+                resolver.resolveAll();
+                const indexed = resolver.resolveRange(from, to);
+
+                const expected = overlapping(all, from, to);
+                expect(walked.map((r) => r.ref.node.from)).to.deep.equal(expected);
+                expect(indexed.map((r) => r.ref.node.from)).to.deep.equal(expected);
+            }
+        });
+
+        it("should resolve lazily in document order", () => {
+            const resolver = createTypeReferenceResolver(unit);
+            const all = resolver.resolveAll();
+
+            const first: ResolvedType[] = [];
+            for (const resolved of resolver.iterResolved()) {
+                first.push(resolved);
+                if (first.length === 3) break;
+            }
+            expect(first.map((r) => r.ref.node.from)).to.deep.equal(all.slice(0, 3).map((r) => r.ref.node.from));
+            expect(Array.from(resolver.iterResolved()).map((r) => r.qualifiedName)).to.deep.equal(
+                all.map((r) => r.qualifiedName)
+            );
+        });
+    });
+
+    describe("resolveAllColumns", () => {
+        const source = readFileSync("samples/sample/stream/StreamPersonMisc.java", "utf-8");
+        const unit = parseUnit(parser.parse(source), source);
+
+        it("should match resolveAll row by row", () => {
+            const all = createTypeReferenceResolver(unit).resolveAll();
+            const columns = createTypeReferenceResolver(unit).resolveAllColumns();
+
+            expect(columns.length).to.equal(all.length);
+            for (let i = 0; i < all.length; i++) {
+                expect(columns.from[i]).to.equal(all[i].ref.node.from);
+                expect(columns.to[i]).to.equal(all[i].ref.node.to);
+                expect(RESOLVED_KINDS[columns.kind[i]]).to.equal(all[i].kind);
+                expect(columns.symbols[columns.symbolId[i]]).to.equal(all[i].qualifiedName ?? all[i].name);
+            }
+            expect(new Set(columns.symbols).size).to.equal(columns.symbols.length);
+        });
+
+        it("should transfer its columns in one buffer", () => {
+            const columns = createTypeReferenceResolver(unit).resolveAllColumns();
+            const cloned = structuredClone(columns, { transfer: resolvedColumnsTransferList(columns) });
+
+            expect(cloned.length).to.be.greaterThan(0);
+            expect(cloned.from.buffer).to.equal(cloned.symbolId.buffer);
+            expect(columns.from.byteLength).to.equal(0);
+        });
+    });
+
+    describe("resolveAllAsync", () => {
+        const source = readFileSync("samples/sample/string/StringsLong.java", "utf-8");
+        const unit = parseUnit(parser.parse(source), source);
+        const expected = createTypeReferenceResolver(unit)
+            .resolveAll()
+            .map((r) => [r.ref.node.from, r.qualifiedName ?? r.name]);
+
+        it("should resolve like resolveAll, yielding between slices", async () => {
+            let pauses = 0;
+            const resolved = await createTypeReferenceResolver(unit).resolveAllAsync({
+                budget: 0,
+                pause: async () => {
+                    pauses++;
+                },
+            });
+
+            expect(resolved.map((r) => [r.ref.node.from, r.qualifiedName ?? r.name])).to.deep.equal(expected);
+            expect(pauses).to.be.greaterThan(1);
+        });
+
+        it("should keep progress when aborted", async () => {
+            const resolver = createTypeReferenceResolver(unit);
+            const controller = new AbortController();
+
+            let pauses = 0;
+            const first = resolver.resolveAllAsync({
+                budget: 0,
+                signal: controller.signal,
+                pause: async () => {
+                    if (++pauses === 2) {
+                        controller.abort();
+                    }
+                },
+            });
+            let error: unknown = null;
+            await first.catch((e) => (error = e));
+            expect(error).to.equal(controller.signal.reason);
+
+            let resumedPauses = 0;
+            const resolved = await resolver.resolveAllAsync({
+                budget: 0,
+                pause: async () => {
+                    resumedPauses++;
+                },
+            });
+
+            let totalPauses = 0;
+            await createTypeReferenceResolver(unit).resolveAllAsync({
+                budget: 0,
+                pause: async () => {
+                    totalPauses++;
+                },
+            });
+
+            expect(resolved.map((r) => [r.ref.node.from, r.qualifiedName ?? r.name])).to.deep.equal(expected);
+            expect(resumedPauses).to.equal(totalPauses - 2);
+        });
+
+        it("should reject right away with an aborted signal", async () => {
+            const controller = new AbortController();
+            controller.abort();
+
+            let rejected = false;
+            await createTypeReferenceResolver(unit)
+                .resolveAllAsync({ signal: controller.signal })
+                .catch(() => (rejected = true));
+            expect(rejected).to.be.true;
+        });
+    });
+
     /*describe("Java25Test.java - Java 25 features", () => {
         const source = readFileSync("samples/Java25Test.java", "utf-8");
         const tree = parser.parse(source);
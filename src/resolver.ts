@@ -1,4 +1,8 @@
-import { SyntaxNode } from "@lezer/common";
+import { Input, SyntaxNode } from "@lezer/common";
+import { ModuleGraph } from "./modules.js";
+import { getAnalysisObserver, ResolutionPath } from "./observer.js";
+import { lookupScopedType } from "./scope.js";
+import { createExternalSymbolIndex, ExternalSymbolIndex } from "./symbol-index.js";
 import { CompilationUnit, TypeInfo } from "./unit.js";
 
 // resolving type information out of an AST is hard, so we'll focus on basic name resolution for now
@@ -42,8 +46,47 @@ export interface ResolvedType {
     ref: LocalTypeReference;
 }
 
+/**
+ * The resolution kinds, indexed by the kind column of {@link ResolvedColumns}.
+ */
+export const RESOLVED_KINDS: readonly ResolvedType["kind"][] = ["declared", "imported", "builtin"];
+
+/**
+ * Resolved type references in columnar form, one row per resolved reference in document order.
+ *
+ * The columns are views into one buffer, so the result can be posted to a worker with that buffer transferred,
+ * see {@link resolvedColumnsTransferList}.
+ */
+export interface ResolvedColumns {
+    /** The number of rows. */
+    length: number;
+    /** The reference start offsets. */
+    from: Int32Array;
+    /** The reference end offsets. */
+    to: Int32Array;
+    /** The resolution kinds, indexes into {@link RESOLVED_KINDS}. */
+    kind: Int32Array;
+    /** The resolved symbols, indexes into {@link symbols}. */
+    symbolId: Int32Array;
+    /** The distinct resolved symbols, the qualified name, or the name of builtin types. */
+    symbols: string[];
+}
+
+/**
+ * Gets the buffers to transfer when posting resolved columns to a worker, instead of copying them.
+ *
+ * The columns are unusable on the sending side afterwards.
+ *
+ * @param columns - The resolved columns
+ * @returns The transfer list
+ */
+export const resolvedColumnsTransferList = (columns: ResolvedColumns): ArrayBuffer[] => [
+    columns.from.buffer as ArrayBuffer,
+];
+
 const BUILTIN_TYPES = new Set(["byte", "short", "int", "long", "char", "float", "double", "boolean", "void"]);
-const ALLOWED_PARENTS = new Set([
+// node names getTypeName can produce a name for, a name within one of them is the parent's name
+const REFERENCE_NODES = new Set([
     "TypeName",
     "ScopedTypeName",
     "PrimitiveType",
@@ -56,25 +99,25 @@ const ALLOWED_PARENTS = new Set([
 
 // the limit here is kinda hacking around cases where we don't want the entire fully qualified name
 // the AST is a bit awkward to work with in this regard
-const getTypeName = (node: SyntaxNode, source: string, limit: number = node.to): string | null => {
+const getTypeName = (node: SyntaxNode, input: Input, limit: number = node.to): string | null => {
     switch (node.name) {
         case "TypeName":
         case "ScopedTypeName": {
-            if (node.parent && ALLOWED_PARENTS.has(node.parent.type.name)) {
-                return getTypeName(node.parent, source, limit);
+            if (node.parent && REFERENCE_NODES.has(node.parent.type.name)) {
+                return getTypeName(node.parent, input, limit);
             }
 
-            return source.slice(node.from, Math.min(limit, node.to));
+            return input.read(node.from, Math.min(limit, node.to));
         }
         case "PrimitiveType":
         case "void": {
-            return source.slice(node.from, node.to);
+            return input.read(node.from, node.to);
         }
         case "Identifier":
         case "ScopedIdentifier": {
             if (node.parent) {
-                if (ALLOWED_PARENTS.has(node.parent.type.name)) {
-                    return getTypeName(node.parent, source);
+                if (REFERENCE_NODES.has(node.parent.type.name)) {
+                    return getTypeName(node.parent, input);
                 } else if (
                     node.parent.name !== "MarkerAnnotation" &&
                     node.parent.name !== "Annotation" &&
@@ -86,7 +129,7 @@ const getTypeName = (node: SyntaxNode, source: string, limit: number = node.to):
                 }
             }
 
-            return source.slice(node.from, node.to);
+            return input.read(node.from, node.to);
         }
         case "Definition": {
             if (
@@ -102,7 +145,7 @@ const getTypeName = (node: SyntaxNode, source: string, limit: number = node.to):
                 return null;
             }
 
-            return source.slice(node.from, node.to);
+            return input.read(node.from, node.to);
         }
         case "FieldAccess": {
             if (node.parent?.name === "FieldAccess") {
@@ -112,7 +155,7 @@ const getTypeName = (node: SyntaxNode, source: string, limit: number = node.to):
 
             // pointing at an inner class access or a different expression, we can't resolve that
             return node.firstChild?.name === "Identifier"
-                ? source.slice(node.firstChild.from, node.firstChild.to)
+                ? input.read(node.firstChild.from, node.firstChild.to)
                 : null;
         }
     }
@@ -120,50 +163,194 @@ const getTypeName = (node: SyntaxNode, source: string, limit: number = node.to):
     return null;
 };
 
-const collectAllTypeReferences = (
+// references overlapping the range (inclusive), in document order, entering only nodes that overlap it
+function* iterAllTypeReferences(
     node: SyntaxNode,
-    source: string,
-    refs: LocalTypeReference[] = []
-): LocalTypeReference[] => {
-    const name = getTypeName(node, source);
-    if (name) {
-        const existing = refs.find((r) => r.node === node);
-        if (!existing) {
-            refs.push({
-                name,
-                node,
-            });
+    input: Input,
+    from: number = node.from,
+    to: number = node.to
+): Generator<LocalTypeReference, void, undefined> {
+    const cursor = node.cursor();
+
+    // references are found in document order and never nest, so checking the last one is enough to dedupe
+    let lastFrom = -1;
+    let lastTo = -1;
+    let depth = 0;
+    for (;;) {
+        if (cursor.from > to) {
+            // everything after this starts later too
+            return;
+        }
+
+        if (cursor.to >= from) {
+            const refNode = REFERENCE_NODES.has(cursor.name) ? cursor.node : null;
+            const name = refNode ? getTypeName(refNode, input) : null;
+            if (name) {
+                if (cursor.from !== lastFrom || cursor.to !== lastTo) {
+                    lastFrom = cursor.from;
+                    lastTo = cursor.to;
+                    yield {
+                        name,
+                        node: refNode,
+                    };
+                }
+            } else if (cursor.from >= from ? cursor.firstChild() : cursor.childAfter(from - 1)) {
+                // enter node, as we didn't find a type reference here
+                depth++;
+                continue;
+            }
         }
-    } else {
-        // enter node, as we didn't find a type reference here
-        let child = node.firstChild;
-        while (child) {
-            collectAllTypeReferences(child, source, refs);
-            child = child.nextSibling;
+
+        // move to the next sibling, climbing up until one is found or we're back at the starting node
+        for (;;) {
+            if (depth === 0) {
+                return;
+            }
+            if (cursor.nextSibling()) {
+                break;
+            }
+
+            cursor.parent();
+            depth--;
         }
     }
+}
+
+const collectAllTypeReferences = (node: SyntaxNode, input: Input): LocalTypeReference[] =>
+    Array.from(iterAllTypeReferences(node, input));
 
+/**
+ * Collects all type references in a compilation unit, in document order.
+ *
+ * @param unit - The compilation unit
+ * @returns The local type references, unresolved
+ */
+export const collectTypeReferences = (unit: CompilationUnit): LocalTypeReference[] => {
+    const observer = getAnalysisObserver();
+    const start = observer?.phase ? performance.now() : 0;
+    const refs = collectAllTypeReferences(unit.tree.topNode, unit.input);
+    observer?.phase?.("collect", start, performance.now(), refs.length);
     return refs;
 };
 
-const resolveInUnit = (typeName: string, unit: CompilationUnit): TypeInfo | null => {
-    for (const cls of unit.types) {
-        if (
-            cls.name === typeName ||
-            cls.qualifiedName === typeName ||
-            (unit.packageName ? `${unit.packageName}.` : "") + cls.qualifiedName === typeName
-        ) {
-            return cls;
+/**
+ * Iterates the type references overlapping a range of a compilation unit, in document order.
+ *
+ * Only the part of the tree covering the range is walked.
+ *
+ * @param unit - The compilation unit
+ * @param from - The start offset of the range, inclusive
+ * @param to - The end offset of the range, inclusive
+ * @returns The local type references, unresolved
+ */
+export const iterTypeReferences = (
+    unit: CompilationUnit,
+    from: number = 0,
+    to: number = unit.input.length
+): IterableIterator<LocalTypeReference> => iterAllTypeReferences(unit.tree.topNode, unit.input, from, to);
+
+// collected references, sorted by position and never nesting, with their spans in flat arrays for binary search
+interface ReferenceIndex {
+    refs: LocalTypeReference[];
+    starts: Int32Array;
+    ends: Int32Array;
+    // 0 = unknown, 1 = leaf node, 2 = has children
+    leaves: Uint8Array;
+}
+
+const createReferenceIndex = (refs: LocalTypeReference[]): ReferenceIndex => {
+    const starts = new Int32Array(refs.length);
+    const ends = new Int32Array(refs.length);
+    for (let i = 0; i < refs.length; i++) {
+        starts[i] = refs[i].node.from;
+        ends[i] = refs[i].node.to;
+    }
+
+    return { refs, starts, ends, leaves: new Uint8Array(refs.length) };
+};
+
+// number of leading values at or below the given value, the values being sorted
+const upperBound = (values: Int32Array, value: number): number => {
+    let low = 0;
+    let high = values.length;
+    while (low < high) {
+        const mid = (low + high) >>> 1;
+        if (values[mid] <= value) {
+            low = mid + 1;
+        } else {
+            high = mid;
         }
     }
+    return low;
+};
 
-    return null;
+// index of the last reference starting at or before the offset, -1 if there is none
+const findReference = (index: ReferenceIndex, offset: number): number => upperBound(index.starts, offset) - 1;
+
+const referenceAt = (unit: CompilationUnit, offset: number, side?: -1 | 0 | 1): LocalTypeReference | null => {
+    const node = unit.tree.resolveInner(offset, side);
+    const name = getTypeName(node, unit.input);
+    return name ? { name, node } : null;
 };
 
+// answers from the index where it's unambiguous, falling back to a tree lookup otherwise
+const indexedReferenceAt = (
+    index: ReferenceIndex,
+    unit: CompilationUnit,
+    offset: number,
+    side?: -1 | 0 | 1
+): LocalTypeReference | null => {
+    const i = findReference(index, offset);
+    if (i < 0 || offset > index.ends[i]) {
+        // every named node is within a collected reference, there's nothing here
+        return null;
+    }
+
+    if (offset > index.starts[i] && offset < index.ends[i]) {
+        if (index.leaves[i] === 0) {
+            index.leaves[i] = index.refs[i].node.firstChild ? 2 : 1;
+        }
+
+        // the innermost node is the reference itself, scoped names need to be cut at the inner node instead
+        if (index.leaves[i] === 1) {
+            return index.refs[i];
+        }
+    }
+
+    // on a reference boundary the side decides which node is entered
+    return referenceAt(unit, offset, side);
+};
+
+const reportPath = (path: ResolutionPath) => {
+    getAnalysisObserver()?.resolution?.(path);
+};
+
+// the first declaration in the unit with a matching simple, qualified or fully qualified name
+const resolveInUnit = (typeName: string, unit: CompilationUnit): TypeInfo | null =>
+    unit.declaredTypes.get(typeName)?.[0] ?? null;
+
+// indexes of reference arrays, built once per array and again only if its length changed
+const arrayIndexes = new WeakMap<ExternalTypeReference[], { length: number; index: ExternalSymbolIndex }>();
+
+const toSymbolIndex = (refs: ExternalTypeReference[] | ExternalSymbolIndex): ExternalSymbolIndex => {
+    if (!Array.isArray(refs)) {
+        return refs;
+    }
+
+    let cached = arrayIndexes.get(refs);
+    if (!cached || cached.length !== refs.length) {
+        cached = { length: refs.length, index: createExternalSymbolIndex(refs) };
+        arrayIndexes.set(refs, cached);
+    }
+    return cached.index;
+};
+
+// the first type named so in the packages a module import makes visible
 const resolveImported = (
     typeRef: LocalTypeReference,
     unit: CompilationUnit,
-    externalRefs: ExternalTypeReference[]
+    symbols: ExternalSymbolIndex,
+    modules: ModuleGraph | null
 ): ResolvedType => {
     // type imports
     for (const imp of unit.imports) {
@@ -171,6 +358,7 @@ const resolveImported = (
             imp.kind === "type" &&
             (imp.importedName === typeRef.name || imp.importedName.endsWith(`.${typeRef.name}`))
         ) {
+            reportPath("imported");
             return {
                 kind: "imported",
                 name: typeRef.name,
@@ -183,10 +371,9 @@ const resolveImported = (
     // wildcard imports
     for (const imp of unit.imports) {
         if (imp.kind === "wildcard") {
-            const matchingExternal = externalRefs.find(
-                (ext) => `${imp.importedName}.${typeRef.name}` === ext.qualifiedName
-            );
+            const matchingExternal = symbols.byQualifiedName(`${imp.importedName}.${typeRef.name}`);
             if (matchingExternal) {
+                reportPath("wildcard");
                 return {
                     kind: "imported",
                     name: typeRef.name,
@@ -200,12 +387,13 @@ const resolveImported = (
     // module imports
     for (const imp of unit.imports) {
         if (imp.kind === "module") {
-            const matchingExternal = externalRefs.find(
-                (ext) =>
-                    ext.moduleName === imp.importedName &&
-                    (ext.name === typeRef.name || ext.qualifiedName.endsWith(`.${typeRef.name}`))
-            );
+            // through the module's exports if it's known, by the module name of the references otherwise
+            const packages = modules?.exportedPackages(imp.importedName);
+            const matchingExternal = packages
+                ? symbols.byPackages(packages, typeRef.name)
+                : symbols.byModule(imp.importedName, typeRef.name);
             if (matchingExternal) {
+                reportPath("module");
                 return {
                     kind: "imported",
                     name: typeRef.name,
@@ -217,15 +405,16 @@ const resolveImported = (
     }
 
     // same-package classes
-    let matchingExternal = externalRefs.find(
-        (ext) => ext.packageName === (unit.packageName ?? "") && ext.name === typeRef.name
-    );
+    let path: ResolutionPath = "package";
+    let matchingExternal = symbols.byPackage(unit.packageName ?? "", typeRef.name);
     if (!matchingExternal) {
         // implicit import of java.lang.*
-        matchingExternal = externalRefs.find((ext) => ext.packageName === "java.lang" && ext.name === typeRef.name);
+        path = "java.lang";
+        matchingExternal = symbols.byPackage("java.lang", typeRef.name);
     }
 
     if (matchingExternal) {
+        reportPath(path);
         return {
             kind: "imported",
             name: typeRef.name,
@@ -236,28 +425,44 @@ const resolveImported = (
 
     // returning unresolved types would contain false positives for references that aren't actually types
     // we don't have enough info to do ambiguity resolution here, so just return nothing
+    reportPath("unresolved");
     return null;
 };
 
-/**
- * Resolves a local type reference to its complete type information.
- *
- * @param typeRef - The local type reference to resolve
- * @param unit - The compilation unit containing the reference
- * @param externalRefs - Optional array of external type references for resolving wildcard imports and same-package classes.
- *                       Each external reference should include the type name, qualified name, and package name.
- *                       This enables resolution of types from wildcard imports (e.g., import java.util.*) and
- *                       types in the same package that aren't explicitly imported.
- * @returns ResolvedType containing complete type information
- */
-export const resolveTypeReference = (
+const declaredType = (typeRef: LocalTypeReference, type: TypeInfo, unit: CompilationUnit): ResolvedType => ({
+    kind: "declared",
+    name: typeRef.name.includes(".") ? typeRef.name : type.qualifiedName,
+    qualifiedName: (unit.packageName ? `${unit.packageName}.` : "") + type.qualifiedName,
+    declaration: type.node,
+    ref: typeRef,
+});
+
+// the type declared by the scopes enclosing the reference, null for type parameters,
+// or undefined if no enclosing scope declares the (first segment of the) name
+const resolveInScopes = (typeRef: LocalTypeReference, unit: CompilationUnit): TypeInfo | null | undefined => {
+    const name = typeRef.name;
+    const dot = name.indexOf(".");
+    const found = lookupScopedType(unit.scope, typeRef.node.from, dot === -1 ? name : name.slice(0, dot));
+    if (!found || dot === -1) {
+        return found;
+    }
+
+    // a member type of a type in scope, e.g. Inner.Deep
+    const qualifiedName = found.qualifiedName + name.slice(dot);
+    return unit.declaredTypes.get(qualifiedName)?.find((type) => type.qualifiedName === qualifiedName);
+};
+
+// resolution of names no enclosing scope declares, which only depends on the name
+const resolveUnscoped = (
     typeRef: LocalTypeReference,
     unit: CompilationUnit,
-    externalRefs: ExternalTypeReference[] = []
+    symbols: ExternalSymbolIndex,
+    modules: ModuleGraph | null
 ): ResolvedType | null => {
     const typeName = typeRef.name;
 
     if (BUILTIN_TYPES.has(typeName)) {
+        reportPath("builtin");
         return {
             kind: "builtin",
             name: typeName,
@@ -266,8 +471,9 @@ export const resolveTypeReference = (
     }
 
     // find exact match in external refs - fully qualified name?
-    const externalMatch = externalRefs.find((ext) => ext.qualifiedName === typeName);
+    const externalMatch = symbols.byQualifiedName(typeName);
     if (externalMatch) {
+        reportPath("qualified");
         return {
             kind: "imported",
             name: typeName,
@@ -278,23 +484,88 @@ export const resolveTypeReference = (
 
     const localResolved = resolveInUnit(typeName, unit);
     if (localResolved) {
-        return {
-            kind: "declared",
-            name: typeName.includes(".") ? typeName : localResolved.qualifiedName,
-            qualifiedName: (unit.packageName ? `${unit.packageName}.` : "") + localResolved.qualifiedName,
-            declaration: localResolved.node,
-            ref: typeRef,
-        };
+        reportPath("declared");
+        return declaredType(typeRef, localResolved, unit);
     }
 
-    const importedResolved = resolveImported(typeRef, unit, externalRefs);
-    if (importedResolved) {
-        return importedResolved;
+    return resolveImported(typeRef, unit, symbols, modules);
+};
+
+/**
+ * Resolves a local type reference to its complete type information.
+ *
+ * Types and type parameters declared by the scopes enclosing the reference are looked up first,
+ * from the innermost scope outwards, type parameters resolve to null.
+ *
+ * @param typeRef - The local type reference to resolve
+ * @param unit - The compilation unit containing the reference
+ * @param externalRefs - Optional external type references for resolving wildcard imports and same-package classes,
+ *                       either as an array or a prebuilt {@link ExternalSymbolIndex}.
+ *                       Each external reference should include the type name, qualified name, and package name.
+ *                       This enables resolution of types from wildcard imports (e.g., import java.util.*) and
+ *                       types in the same package that aren't explicitly imported.
+ *                       Arrays are indexed on first use and the index is kept for as long as the array,
+ *                       so they shouldn't be modified in place other than by appending.
+ * @param modules - Optional module exports, module imports of known modules are resolved through their exported
+ *                  packages instead of the module names of the external references.
+ * @returns ResolvedType containing complete type information
+ */
+export const resolveTypeReference = (
+    typeRef: LocalTypeReference,
+    unit: CompilationUnit,
+    externalRefs: ExternalTypeReference[] | ExternalSymbolIndex = [],
+    modules: ModuleGraph | null = null
+): ResolvedType | null => {
+    const scoped = resolveInScopes(typeRef, unit);
+    if (scoped !== undefined) {
+        reportPath("scoped");
+        // type parameters have no declaration to point to
+        return scoped && declaredType(typeRef, scoped, unit);
     }
 
-    return null;
+    return resolveUnscoped(typeRef, unit, toSymbolIndex(externalRefs), modules);
 };
 
+// references processed between deadline checks, reading the clock for each would be slower than resolving
+const SLICE_CHECK_INTERVAL = 64;
+
+const nextTask = () => new Promise<void>((resolve) => setTimeout(resolve, 0));
+
+interface AsyncProgress {
+    refs: LocalTypeReference[];
+    // null once every reference is collected
+    collector: Iterator<LocalTypeReference> | null;
+    resolved: ResolvedType[];
+    // the index of the next reference to resolve
+    next: number;
+    // the memo invalidation the resolutions were made after
+    invalidations: number;
+}
+
+/**
+ * Options of {@link TypeReferenceResolver.resolveAllAsync}.
+ */
+export interface AsyncResolveOptions {
+    /** The time to work for before yielding, in milliseconds, defaults to 8. */
+    budget?: number;
+    /** The signal to stop at, progress made so far is kept for the next call. */
+    signal?: AbortSignal;
+    /** Yields to the event loop between slices, defaults to a zero timeout. */
+    pause?: () => Promise<void>;
+}
+
+/**
+ * Counters of a resolver's memoized resolutions.
+ */
+export interface ResolutionCacheStats {
+    /** Lookups answered from the memo, including names memoized as unresolvable. */
+    hits: number;
+    /** Lookups that had to be resolved. */
+    misses: number;
+    /** The number of times the memo was cleared, because the imports, external references or modules changed. */
+    invalidations: number;
+}
+
 /**
  * Type reference resolver for a compilation unit.
  *
@@ -305,6 +576,9 @@ export interface TypeReferenceResolver {
     /** The compilation unit being analyzed. */
     unit: CompilationUnit;
 
+    /** The counters of resolutions memoized by type name, since the resolver was created. */
+    readonly cacheStats: ResolutionCacheStats;
+
     /**
      * Resolves complete type information of the reference at the given offset.
      *
@@ -327,22 +601,76 @@ export interface TypeReferenceResolver {
      */
     resolveReferenceAt(offset: number, side?: -1 | 0 | 1): LocalTypeReference | null;
 
+    /**
+     * Resolves complete type information of the references at many offsets at once.
+     *
+     * @param offsets - The offsets in the source code
+     * @param side - Optional side to resolve on (-1 = left, 0 = exact, 1 = right)
+     * @returns ResolvedType or null for each offset, in the order of the offsets
+     */
+    resolveMany(offsets: readonly number[], side?: -1 | 0 | 1): (ResolvedType | null)[];
+
     /**
      * Resolves all type references in the compilation unit.
      *
      * @returns An array of resolved type information for all references.
      */
     resolveAll(): ResolvedType[];
+
+    /**
+     * Resolves all type references in the compilation unit, into typed arrays and a symbol table.
+     *
+     * This allocates no object per reference, prefer it for batch processing of many units.
+     *
+     * @returns The resolved references in columnar form, in document order
+     */
+    resolveAllColumns(): ResolvedColumns;
+
+    /**
+     * Resolves all type references in the compilation unit in time-budgeted slices, yielding between them.
+     *
+     * An aborted call rejects with the signal's reason, the references collected and resolved so far are kept,
+     * so the next call continues where it stopped. Progress is discarded if the imports or external references change.
+     *
+     * @param options - The time budget, abort signal and yield function
+     * @returns An array of resolved type information for all references, as from {@link resolveAll}
+     */
+    resolveAllAsync(options?: AsyncResolveOptions): Promise<ResolvedType[]>;
+
+    /**
+     * Resolves the type references overlapping a range, e.g. the visible part of an editor.
+     *
+     * Only the part of the tree covering the range is walked, unless the references were already collected.
+     *
+     * @param from - The start offset of the range, inclusive
+     * @param to - The end offset of the range, inclusive
+     * @returns An array of resolved type information for the references, in document order.
+     */
+    resolveRange(from: number, to: number): ResolvedType[];
+
+    /**
+     * Lazily resolves the type references overlapping a range, in document order.
+     *
+     * References are collected and resolved as the iterator advances, stopping early walks no further.
+     *
+     * @param from - Optional start offset of the range, inclusive, defaults to the start of the unit
+     * @param to - Optional end offset of the range, inclusive, defaults to the end of the unit
+     * @returns An iterator of resolved type information
+     */
+    iterResolved(from?: number, to?: number): IterableIterator<ResolvedType>;
 }
 
 /**
  * Creates a type reference resolver for a compilation unit.
  *
  * @param unit - The compilation unit to analyze
- * @param refs - Optional array of external type references for resolving wildcard imports and same-package classes.
+ * @param refs - Optional external type references for resolving wildcard imports and same-package classes,
+ *               either as an array or a prebuilt {@link ExternalSymbolIndex} shared between resolvers.
  *               Each external reference should include the type name, qualified name, and package name.
  *               This enables resolution of types from wildcard imports (e.g., import java.util.*) and
  *               types in the same package that aren't explicitly imported.
+ * @param modules - Optional module exports, e.g. from `module-info` units or {@link readModuleInfo},
+ *                  module imports of known modules are resolved through their transitively exported packages.
  *
  * @example
  * ```typescript
@@ -352,37 +680,246 @@ export interface TypeReferenceResolver {
  *   { name: "OtherClass", qualifiedName: "com.example.OtherClass", packageName: "com.example" }
  * ];
  * const resolver = createTypeReferenceResolver(unit, externalRefs);
+ *
+ * // or, when resolving many units against the same references
+ * const index = createExternalSymbolIndex(externalRefs);
+ * const resolver = createTypeReferenceResolver(unit, index);
  * ```
  */
 export const createTypeReferenceResolver = (
     unit: CompilationUnit,
-    refs: ExternalTypeReference[] = []
+    externalRefs: ExternalTypeReference[] | ExternalSymbolIndex = [],
+    modules: ModuleGraph | null = null
 ): TypeReferenceResolver => {
+    const refs = toSymbolIndex(externalRefs);
+
+    // resolution outside of scopes only depends on the referenced name,
+    // so memoize it by name, including names that don't resolve
+    const memo = new Map<string, ResolvedType | null>();
+    const cacheStats: ResolutionCacheStats = { hits: 0, misses: 0, invalidations: 0 };
+    let memoVersion = refs.version;
+    let memoModulesVersion = modules?.version;
+    let memoImports = unit.imports;
+    let memoImportCount = unit.imports.length;
+
+    const syncMemo = () => {
+        if (
+            refs.version !== memoVersion ||
+            modules?.version !== memoModulesVersion ||
+            unit.imports !== memoImports ||
+            unit.imports.length !== memoImportCount
+        ) {
+            memo.clear();
+            memoVersion = refs.version;
+            memoModulesVersion = modules?.version;
+            memoImports = unit.imports;
+            memoImportCount = unit.imports.length;
+            cacheStats.invalidations++;
+        }
+    };
+
+    // the resolution of the reference, memoized ones may point at an earlier reference with the same name
+    const lookup = (typeRef: LocalTypeReference): ResolvedType | null => {
+        syncMemo();
+
+        const scoped = resolveInScopes(typeRef, unit);
+        if (scoped !== undefined) {
+            reportPath("scoped");
+            return scoped && declaredType(typeRef, scoped, unit);
+        }
+
+        const cached = memo.get(typeRef.name);
+        if (cached !== undefined) {
+            cacheStats.hits++;
+            getAnalysisObserver()?.cache?.(true);
+            return cached;
+        }
+
+        cacheStats.misses++;
+        getAnalysisObserver()?.cache?.(false);
+        const resolved = resolveUnscoped(typeRef, unit, refs, modules);
+        memo.set(typeRef.name, resolved);
+        return resolved;
+    };
+
+    const resolve = (typeRef: LocalTypeReference): ResolvedType | null => {
+        const resolved = lookup(typeRef);
+        return resolved && (resolved.ref === typeRef ? resolved : { ...resolved, ref: typeRef });
+    };
+
+    // built on first use, the tree doesn't change over the resolver's lifetime
+    let index: ReferenceIndex | null = null;
+    const getIndex = () => (index ??= createReferenceIndex(collectTypeReferences(unit)));
+
+    // progress of an unfinished resolveAllAsync, kept across calls
+    let pending: AsyncProgress | null = null;
+
+    // advances the progress until done or past the deadline, returning whether it's done
+    const advance = (progress: AsyncProgress, deadline: number): boolean => {
+        while (progress.collector) {
+            for (let i = 0; i < SLICE_CHECK_INTERVAL; i++) {
+                const next = progress.collector.next();
+                if (next.done) {
+                    progress.collector = null;
+                    break;
+                }
+                progress.refs.push(next.value);
+            }
+            if (performance.now() >= deadline) {
+                return false;
+            }
+        }
+
+        syncMemo();
+        if (cacheStats.invalidations !== progress.invalidations) {
+            // resolved against other imports or external references, start over
+            progress.resolved = [];
+            progress.next = 0;
+            progress.invalidations = cacheStats.invalidations;
+        }
+
+        while (progress.next < progress.refs.length) {
+            const end = Math.min(progress.next + SLICE_CHECK_INTERVAL, progress.refs.length);
+            for (; progress.next < end; progress.next++) {
+                const resolved = resolve(progress.refs[progress.next]);
+                if (resolved) {
+                    progress.resolved.push(resolved);
+                }
+            }
+            if (progress.next < progress.refs.length && performance.now() >= deadline) {
+                return false;
+            }
+        }
+        return true;
+    };
+
     return {
         unit,
+        cacheStats,
         resolveAt(offset: number, side?: -1 | 0 | 1) {
             const typeRef = this.resolveReferenceAt(offset, side);
             if (!typeRef) return null;
 
-            return resolveTypeReference(typeRef, unit, refs);
+            return resolve(typeRef);
         },
 
         resolveReferenceAt(offset: number, side?: -1 | 0 | 1) {
-            const node = unit.tree.resolveInner(offset, side);
-            const name = getTypeName(node, unit.source);
-            if (name) {
-                return {
-                    name,
-                    node,
-                };
-            }
+            return indexedReferenceAt(getIndex(), unit, offset, side);
+        },
 
-            return null;
+        resolveMany(offsets: readonly number[], side?: -1 | 0 | 1) {
+            const index = getIndex();
+            return offsets.map((offset) => {
+                const typeRef = indexedReferenceAt(index, unit, offset, side);
+                return typeRef ? resolve(typeRef) : null;
+            });
         },
 
         resolveAll() {
-            const allRefs = collectAllTypeReferences(unit.tree.topNode, unit.source);
-            return allRefs.map((ref) => resolveTypeReference(ref, unit, refs)).filter(Boolean);
+            const allRefs = getIndex().refs;
+            const observer = getAnalysisObserver();
+            const start = observer?.phase ? performance.now() : 0;
+            const resolved = allRefs.map(resolve).filter(Boolean);
+            observer?.phase?.("resolve", start, performance.now(), allRefs.length);
+            return resolved;
+        },
+
+        resolveAllColumns() {
+            const { refs: allRefs, starts, ends } = getIndex();
+            const n = allRefs.length;
+            const observer = getAnalysisObserver();
+            const start = observer?.phase ? performance.now() : 0;
+
+            // one buffer for all columns, sized for every reference resolving
+            const buffer = new ArrayBuffer(n * 4 * Int32Array.BYTES_PER_ELEMENT);
+            const from = new Int32Array(buffer, 0, n);
+            const to = new Int32Array(buffer, n * 4, n);
+            const kind = new Int32Array(buffer, n * 8, n);
+            const symbolId = new Int32Array(buffer, n * 12, n);
+
+            const symbols: string[] = [];
+            const symbolIds = new Map<string, number>();
+            let length = 0;
+            for (let i = 0; i < n; i++) {
+                const resolved = lookup(allRefs[i]);
+                if (!resolved) {
+                    continue;
+                }
+
+                const symbol = resolved.qualifiedName ?? resolved.name;
+                let id = symbolIds.get(symbol);
+                if (id === undefined) {
+                    id = symbols.push(symbol) - 1;
+                    symbolIds.set(symbol, id);
+                }
+
+                from[length] = starts[i];
+                to[length] = ends[i];
+                kind[length] = RESOLVED_KINDS.indexOf(resolved.kind);
+                symbolId[length] = id;
+                length++;
+            }
+            observer?.phase?.("resolve", start, performance.now(), n);
+
+            return {
+                length,
+                from: from.subarray(0, length),
+                to: to.subarray(0, length),
+                kind: kind.subarray(0, length),
+                symbolId: symbolId.subarray(0, length),
+                symbols,
+            };
+        },
+
+        async resolveAllAsync({ budget = 8, signal, pause = nextTask }: AsyncResolveOptions = {}) {
+            const progress = (pending ??= {
+                refs: index ? index.refs : [],
+                collector: index ? null : iterAllTypeReferences(unit.tree.topNode, unit.input),
+                resolved: [],
+                next: 0,
+                invalidations: cacheStats.invalidations,
+            });
+
+            for (;;) {
+                signal?.throwIfAborted();
+                if (advance(progress, performance.now() + budget)) {
+                    break;
+                }
+                await pause();
+            }
+
+            if (pending === progress) {
+                pending = null;
+            }
+            index ??= createReferenceIndex(progress.refs);
+            return progress.resolved;
+        },
+
+        resolveRange(from: number, to: number) {
+            let rangeRefs: LocalTypeReference[];
+            if (index) {
+                // references are sorted and don't nest, so their ends are sorted too
+                const start = upperBound(index.ends, from - 1);
+                const end = upperBound(index.starts, to);
+                rangeRefs = index.refs.slice(start, Math.max(start, end));
+            } else {
+                rangeRefs = Array.from(iterTypeReferences(unit, from, to));
+            }
+
+            const observer = getAnalysisObserver();
+            const start = observer?.phase ? performance.now() : 0;
+            const resolved = rangeRefs.map(resolve).filter(Boolean);
+            observer?.phase?.("resolve", start, performance.now(), rangeRefs.length);
+            return resolved;
+        },
+
+        *iterResolved(from: number = 0, to: number = unit.input.length) {
+            for (const ref of iterTypeReferences(unit, from, to)) {
+                const resolved = resolve(ref);
+                if (resolved) {
+                    yield resolved;
+                }
+            }
         },
     };
 };
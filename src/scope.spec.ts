@@ -0,0 +1,123 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { findScope, lookupScopedType, Scope, scopePath } from "./scope.js";
+import { parseUnit, updateUnit } from "./unit.js";
+
+describe("Scopes", () => {
+    const source = `package test;
+
+public class Outer<T> {
+  class Node {}
+
+  <E extends Comparable<E>> E max(E a, E b) {
+    if (a != null) {
+      int unrelated = 0;
+    }
+    class Node {}
+    return a;
+  }
+
+  void other() {
+    Node node = null;
+  }
+}`;
+    const unit = parseUnit(parser.parse(source), source);
+
+    it("should nest unit, type, method and block scopes", () => {
+        const path = scopePath(unit.scope, source.indexOf("return a"));
+
+        expect(path.map((scope) => scope.kind)).to.deep.equal(["unit", "type", "method", "block"]);
+        expect(path[0]).to.equal(unit.scope);
+        expect(findScope(unit.scope, source.indexOf("return a"))).to.equal(path[3]);
+    });
+
+    it("should declare types and type parameters", () => {
+        expect(unit.scope.types.get("Outer")?.qualifiedName).to.equal("Outer");
+
+        const outer = findScope(unit.scope, source.indexOf("class Node"));
+        expect(outer.typeParameters.has("T")).to.be.true;
+        expect(outer.types.get("Node")?.qualifiedName).to.equal("Outer.Node");
+
+        const method = findScope(unit.scope, source.indexOf("E a"));
+        expect(method.kind).to.equal("method");
+        expect(Array.from(method.typeParameters)).to.deep.equal(["E"]);
+    });
+
+    it("should leave out scopes declaring nothing", () => {
+        const scope = findScope(unit.scope, source.indexOf("unrelated"));
+
+        // the if block declares nothing, the method body declares the local class
+        expect(scope.kind).to.equal("block");
+        expect(scope.types.has("Node")).to.be.true;
+        expect(findScope(unit.scope, source.indexOf("Node node")).kind).to.equal("type");
+    });
+
+    it("should look up names from the innermost scope outwards", () => {
+        const local = lookupScopedType(unit.scope, source.indexOf("return a"), "Node");
+        expect(local?.node.from).to.equal(source.indexOf("class Node {}\n    return"));
+
+        const member = lookupScopedType(unit.scope, source.indexOf("Node node"), "Node");
+        expect(member?.node.from).to.equal(source.indexOf("class Node"));
+
+        expect(lookupScopedType(unit.scope, source.indexOf("E a"), "E")).to.be.null;
+        expect(lookupScopedType(unit.scope, source.indexOf("E a"), "T")).to.be.null;
+        expect(lookupScopedType(unit.scope, source.indexOf("Node node"), "E")).to.be.undefined;
+        expect(lookupScopedType(unit.scope, 0, "String")).to.be.undefined;
+    });
+
+    describe("updates", () => {
+        const edit = (search: string, replacement: string) => {
+            const from = source.indexOf(search);
+            const to = from + search.length;
+            const next = source.slice(0, from) + replacement + source.slice(to);
+
+            // the scopes are built before the edit, so there are scopes to carry over
+            const prev = parseUnit(parser.parse(source), source);
+            const prevScope = prev.scope;
+            const changes = [{ fromA: from, toA: to, fromB: from, toB: from + replacement.length }];
+            return { prevScope, unit: updateUnit(prev, changes, next, parser) };
+        };
+
+        const shape = (scope: Scope): unknown => ({
+            kind: scope.kind,
+            from: scope.from,
+            to: scope.to,
+            types: Array.from(scope.types, ([name, type]) => [name, type.qualifiedName, type.node.from]),
+            typeParameters: Array.from(scope.typeParameters),
+            children: scope.children.map(shape),
+        });
+
+        it("should keep untouched scopes", () => {
+            const { prevScope, unit } = edit("Node node = null;", "Node node = new Node();");
+
+            expect(shape(unit.scope)).to.deep.equal(shape(parseUnit(unit.tree, unit.source).scope));
+
+            // the member type and the generic method are before the edit, the method body isn't walked again
+            const outer = unit.scope.children[0];
+            expect(outer).to.not.equal(prevScope.children[0]);
+            expect(outer.children[0]).to.equal(prevScope.children[0].children[0]);
+            // the method's scopes declare the local class, whose entry is rebound to the new tree
+            expect(outer.children[1]).to.not.equal(prevScope.children[0].children[1]);
+            expect(outer.children[1].typeParameters).to.equal(prevScope.children[0].children[1].typeParameters);
+
+            const node = outer.types.get("Node");
+            expect(node).to.not.equal(prevScope.children[0].types.get("Node"));
+            expect(node).to.equal(unit.types.find((t) => t.qualifiedName === "Outer.Node"));
+            let top = node.node;
+            while (top.parent) {
+                top = top.parent;
+            }
+            expect(top.to).to.equal(unit.source.length);
+        });
+
+        it("should move scopes after the edit", () => {
+            const { prevScope, unit } = edit("class Node {}", "class Node { int added; }");
+
+            expect(shape(unit.scope)).to.deep.equal(shape(parseUnit(unit.tree, unit.source).scope));
+
+            const method = findScope(unit.scope, unit.source.indexOf("E a"));
+            expect(method).to.not.equal(findScope(prevScope, source.indexOf("E a")));
+            expect(method.typeParameters).to.equal(findScope(prevScope, source.indexOf("E a")).typeParameters);
+        });
+    });
+});
@@ -0,0 +1,314 @@
+import { SyntaxNode } from "@lezer/common";
+import { CompilationUnit, TypeInfo } from "./unit.js";
+
+/**
+ * A lexical scope of a compilation unit, declaring types and type parameters.
+ *
+ * Scopes nest as in the source: the unit, then type declarations, methods and blocks.
+ * They don't link to their parents, so an updated unit can share the scopes of unchanged code with the previous one.
+ */
+export interface Scope {
+    kind: "unit" | "type" | "method" | "block";
+    from: number;
+    to: number;
+
+    /**
+     * The nested scopes, in document order.
+     *
+     * Method and block scopes declaring nothing are left out, their nested scopes are attached to the parent instead.
+     */
+    children: Scope[];
+
+    /** The types declared directly in this scope by simple name, i.e. top-level, member or local types. */
+    types: Map<string, TypeInfo>;
+    /** The type parameters introduced by this scope's type or method. */
+    typeParameters: Set<string>;
+}
+
+/**
+ * The scopes of the previous version of a unit, for carrying over the scopes of unchanged code.
+ */
+export interface PreviousScopes {
+    /** The unit scope of the previous version. */
+    scope: Scope;
+    /** The types of the previous version, mapped to their counterparts in the new version. */
+    types: ReadonlyMap<TypeInfo, TypeInfo>;
+
+    /**
+     * Finds how far an unchanged node moved.
+     *
+     * @param node - The node in the new tree
+     * @returns The offset delta from the previous tree, or null if the node changed
+     */
+    delta(node: SyntaxNode): number | null;
+}
+
+const TYPE_DECLARATIONS = new Set([
+    "ClassDeclaration",
+    "InterfaceDeclaration",
+    "EnumDeclaration",
+    "AnnotationTypeDeclaration",
+    "RecordDeclaration",
+]);
+const METHOD_DECLARATIONS = new Set(["MethodDeclaration", "ConstructorDeclaration"]);
+
+const createScope = (kind: Scope["kind"], from: number, to: number, parent: Scope | null): Scope => {
+    const scope: Scope = {
+        kind,
+        from,
+        to,
+        children: [],
+        types: new Map(),
+        typeParameters: new Set(),
+    };
+    parent?.children.push(scope);
+    return scope;
+};
+
+// index of the first scope starting at or after the offset, the scopes being in document order
+const lowerBound = (scopes: Scope[], offset: number): number => {
+    let low = 0;
+    let high = scopes.length;
+    while (low < high) {
+        const mid = (low + high) >>> 1;
+        if (scopes[mid].from < offset) {
+            low = mid + 1;
+        } else {
+            high = mid;
+        }
+    }
+    return low;
+};
+
+// the outermost scopes within a span, i.e. the scopes opened by the node spanning it, hoisted ones included
+const scopesWithin = (scope: Scope, from: number, to: number): Scope[] => {
+    for (;;) {
+        const children = scope.children;
+        const index = lowerBound(children, from);
+
+        // descend into the scope opened by an enclosing node
+        const before = index > 0 ? children[index - 1] : null;
+        if (before && before.to >= to) {
+            scope = before;
+            continue;
+        }
+        const at = index < children.length ? children[index] : null;
+        if (at && at.from === from && at.to > to) {
+            scope = at;
+            continue;
+        }
+
+        const within: Scope[] = [];
+        for (let i = index; i < children.length && children[i].to <= to; i++) {
+            within.push(children[i]);
+        }
+        return within;
+    }
+};
+
+// the scope moved by a delta with its types replaced, or null if a type is gone,
+// the same object only if it didn't move and neither it nor its children declare types, as entries are always new
+const moveScope = (scope: Scope, delta: number, types: ReadonlyMap<TypeInfo, TypeInfo>): Scope | null => {
+    let changed = delta !== 0;
+
+    const children: Scope[] = [];
+    for (const child of scope.children) {
+        const moved = moveScope(child, delta, types);
+        if (!moved) {
+            return null;
+        }
+
+        changed ||= moved !== child;
+        children.push(moved);
+    }
+
+    const declared = new Map<string, TypeInfo>();
+    for (const [name, type] of scope.types) {
+        const next = types.get(type);
+        if (!next) {
+            return null;
+        }
+
+        changed ||= next !== type;
+        declared.set(name, next);
+    }
+
+    // type parameters are never modified after building, so they can be shared
+    return changed ? { ...scope, from: scope.from + delta, to: scope.to + delta, children, types: declared } : scope;
+};
+
+/**
+ * Builds the scope tree of a compilation unit from its tree and type declarations.
+ *
+ * Given the scopes of the previous version of the unit, nodes that didn't change take their scopes from it
+ * and aren't walked, so rebuilding after an edit is proportional to the edited declarations.
+ *
+ * @param unit - The compilation unit, its types must already be extracted
+ * @param prev - The scopes of the previous version of the unit, if any
+ * @returns The unit scope
+ */
+export const buildScopes = (unit: Pick<CompilationUnit, "tree" | "input" | "types">, prev?: PreviousScopes): Scope => {
+    const { tree, input } = unit;
+    const root = createScope("unit", tree.topNode.from, tree.topNode.to, null);
+    const typesByFrom = new Map(unit.types.map((type) => [type.node.from, type]));
+
+    // the scopes entered so far, innermost last
+    const open: Scope[] = [root];
+    // whether each entered node opened a scope, to close it on leave
+    const opened: boolean[] = [];
+
+    // attaches the scopes an unchanged node opened in the previous version, returning whether it could
+    const reuse = (node: SyntaxNode): boolean => {
+        const delta = prev ? prev.delta(node) : null;
+        if (delta === null) {
+            return false;
+        }
+
+        const moved: Scope[] = [];
+        for (const scope of scopesWithin(prev.scope, node.from - delta, node.to - delta)) {
+            const next = moveScope(scope, delta, prev.types);
+            if (!next) {
+                return false;
+            }
+            moved.push(next);
+        }
+
+        open[open.length - 1].children.push(...moved);
+        return true;
+    };
+
+    tree.iterate({
+        enter(node) {
+            const current = open[open.length - 1];
+            if (TYPE_DECLARATIONS.has(node.name)) {
+                const type = typesByFrom.get(node.from);
+                if (type && type.node.name === node.name) {
+                    // the first declaration wins, as in declaration order lookups
+                    if (!current.types.has(type.name)) {
+                        current.types.set(type.name, type);
+                    }
+                    if (reuse(node.node)) {
+                        // children aren't entered, so there's no leave either
+                        return false;
+                    }
+
+                    const scope = createScope("type", node.from, node.to, current);
+                    for (const param of type.typeParameters) {
+                        scope.typeParameters.add(param);
+                    }
+                    open.push(scope);
+                    opened.push(true);
+                    return;
+                }
+            } else if (METHOD_DECLARATIONS.has(node.name)) {
+                if (reuse(node.node)) {
+                    return false;
+                }
+
+                const scope = createScope("method", node.from, node.to, current);
+                const params = node.node.getChild("TypeParameters");
+                for (let param = params?.firstChild; param; param = param.nextSibling) {
+                    const def = param.name === "TypeParameter" ? param.getChild("Definition") : null;
+                    if (def) {
+                        scope.typeParameters.add(input.read(def.from, def.to));
+                    }
+                }
+                open.push(scope);
+                opened.push(true);
+                return;
+            } else if (node.name === "Block") {
+                if (reuse(node.node)) {
+                    return false;
+                }
+
+                open.push(createScope("block", node.from, node.to, current));
+                opened.push(true);
+                return;
+            }
+
+            opened.push(false);
+        },
+        leave() {
+            if (!opened.pop()) {
+                return;
+            }
+
+            const scope = open.pop();
+            const parent = open[open.length - 1];
+            if (scope.kind !== "type" && scope.types.size === 0 && scope.typeParameters.size === 0) {
+                // nothing declared here, hoist the nested scopes
+                parent.children.pop();
+                parent.children.push(...scope.children);
+            }
+        },
+    });
+
+    return root;
+};
+
+/**
+ * Finds the scopes containing an offset.
+ *
+ * @param scope - The scope to start at, usually the unit scope
+ * @param offset - The offset in the source code
+ * @returns The given scope and the nested scopes containing the offset, outermost first
+ */
+export const scopePath = (scope: Scope, offset: number): Scope[] => {
+    const path = [scope];
+    for (;;) {
+        // last child starting at or before the offset
+        const children = scope.children;
+        let low = 0;
+        let high = children.length;
+        while (low < high) {
+            const mid = (low + high) >>> 1;
+            if (children[mid].from <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        const child = low > 0 ? children[low - 1] : null;
+        if (!child || offset >= child.to) {
+            return path;
+        }
+        scope = child;
+        path.push(scope);
+    }
+};
+
+/**
+ * Finds the innermost scope containing an offset.
+ *
+ * @param scope - The scope to start at, usually the unit scope
+ * @param offset - The offset in the source code
+ * @returns The innermost scope, or the given scope if no nested scope contains the offset
+ */
+export const findScope = (scope: Scope, offset: number): Scope => {
+    const path = scopePath(scope, offset);
+    return path[path.length - 1];
+};
+
+/**
+ * Looks up a simple type name through the scopes containing an offset, innermost first.
+ *
+ * @param scope - The scope to start at, usually the unit scope
+ * @param offset - The offset in the source code
+ * @param name - The simple type name
+ * @returns The declared type, null if the name is a type parameter, or undefined if no scope declares it
+ */
+export const lookupScopedType = (scope: Scope, offset: number, name: string): TypeInfo | null | undefined => {
+    const path = scopePath(scope, offset);
+    for (let i = path.length - 1; i >= 0; i--) {
+        const type = path[i].types.get(name);
+        if (type) {
+            return type;
+        }
+        if (path[i].typeParameters.has(name)) {
+            return null;
+        }
+    }
+
+    return undefined;
+};
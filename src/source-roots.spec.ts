@@ -0,0 +1,173 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { SourceFile } from "./indexer.js";
+import { createLazySymbolIndex, SourceRootProvider } from "./source-roots.js";
+import { createExternalSymbolIndex } from "./symbol-index.js";
+import { parseUnit } from "./unit.js";
+import { createWorkspace } from "./workspace.js";
+
+const createProvider = (packages: Record<string, Record<string, string>>, moduleSource?: string) => {
+    const requests: string[] = [];
+    const provider: SourceRootProvider = {
+        packageFiles(packageName: string): SourceFile[] {
+            requests.push(packageName);
+            return Object.entries(packages[packageName] ?? {}).map(([path, source]) => ({ path, source }));
+        },
+        moduleFiles: () => (moduleSource ? [{ path: "module-info.java", source: moduleSource }] : []),
+    };
+
+    return { provider, requests };
+};
+
+describe("Source roots", () => {
+    const packages = {
+        test: {
+            "test/Helper.java": `package test;
+
+public class Helper {
+    public static class Nested {}
+
+    void run() {
+        class Local {}
+    }
+}`,
+        },
+        other: {
+            "other/Util.java": "package other;\n\npublic class Util {}",
+        },
+    };
+
+    describe("createLazySymbolIndex", () => {
+        it("should load packages when looked up", () => {
+            const { provider, requests } = createProvider(packages);
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.size).to.equal(0);
+            expect(index.byPackage("test", "Helper")?.qualifiedName).to.equal("test.Helper");
+            expect(index.byPackage("test", "Helper.Nested")?.qualifiedName).to.equal("test.Helper.Nested");
+            expect(index.byPackage("test", "Local")).to.be.null;
+
+            expect(requests).to.deep.equal(["test"]);
+            expect(Array.from(index.loadedPackages)).to.deep.equal(["test"]);
+            expect(index.size).to.equal(2);
+        });
+
+        it("should load packages of qualified names", () => {
+            const { provider, requests } = createProvider(packages);
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.byQualifiedName("test.Helper.Nested")?.name).to.equal("Helper.Nested");
+            expect(index.byQualifiedName("other.Util")?.name).to.equal("Util");
+            expect(index.byQualifiedName("other.Missing")).to.be.null;
+
+            // the longest prefix is tried first, then the package once found
+            expect(requests).to.deep.equal(["test.Helper", "test", "other"]);
+        });
+
+        it("should not list packages without files again", () => {
+            const { provider, requests } = createProvider(packages);
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.byQualifiedName("test.Helper.Missing")).to.be.null;
+            expect(index.byQualifiedName("test.Helper.Missing")).to.be.null;
+            expect(index.byPackage("test.Helper", "Missing")).to.be.null;
+            expect(index.byQualifiedName("test.Other")).to.be.null;
+
+            // nothing shorter than the existing test package
+            expect(requests).to.deep.equal(["test.Helper", "test"]);
+            expect(Array.from(index.loadedPackages)).to.deep.equal(["test"]);
+        });
+
+        it("should look up invalidated packages without files again", () => {
+            const sources: Record<string, Record<string, string>> = {};
+            const { provider, requests } = createProvider(sources);
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.byPackage("other", "Util")).to.be.null;
+            sources.other = packages.other;
+            expect(index.byPackage("other", "Util")).to.be.null;
+
+            expect(index.invalidate("other")).to.be.true;
+            expect(index.byPackage("other", "Util")).to.not.be.null;
+            expect(requests).to.deep.equal(["other", "other"]);
+        });
+
+        it("should prefer external references", () => {
+            const { provider, requests } = createProvider(packages);
+            const external = createExternalSymbolIndex([
+                { name: "Helper", qualifiedName: "test.Helper", packageName: "test", moduleName: "test.lib" },
+            ]);
+            const index = createLazySymbolIndex(provider, parser, external);
+
+            expect(index.byPackage("test", "Helper")?.moduleName).to.equal("test.lib");
+            expect(index.byQualifiedName("test.Helper")?.moduleName).to.equal("test.lib");
+            expect(requests).to.be.empty;
+        });
+
+        it("should reload invalidated packages", () => {
+            const sources = { test: { ...packages.test } };
+            const { provider, requests } = createProvider(sources);
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.byPackage("test", "Helper")).to.not.be.null;
+            const version = index.version;
+
+            sources.test["test/Helper.java"] = "package test;\n\npublic class Renamed {}";
+            expect(index.invalidate("test")).to.be.true;
+            expect(index.invalidate("test")).to.be.false;
+            expect(index.version).to.not.equal(version);
+
+            expect(index.byPackage("test", "Helper")).to.be.null;
+            expect(index.byPackage("test", "Renamed")).to.not.be.null;
+            expect(requests).to.deep.equal(["test", "test"]);
+        });
+
+        it("should find types of the source roots' modules", () => {
+            const { provider, requests } = createProvider(packages, "module test.app { exports other; }");
+            const index = createLazySymbolIndex(provider, parser);
+
+            expect(index.modules.map((m) => m.name)).to.deep.equal(["test.app"]);
+            expect(index.byModule("test.app", "Util")?.qualifiedName).to.equal("other.Util");
+            expect(index.byModule("test.app", "Helper")).to.be.null;
+            expect(index.byModule("test.other", "Util")).to.be.null;
+            expect(requests).to.deep.equal(["other"]);
+        });
+    });
+
+    describe("workspace", () => {
+        it("should resolve open units against the source roots", () => {
+            const { provider, requests } = createProvider(packages);
+            const workspace = createWorkspace(createLazySymbolIndex(provider, parser));
+
+            const source = `package test;
+
+import other.Util;
+
+public class Main {
+    private Helper helper;
+    private Util util;
+}`;
+            workspace.set("test/Main.java", parseUnit(parser.parse(source), source));
+
+            const resolver = workspace.createResolver("test/Main.java");
+            expect(resolver?.resolveAt(source.indexOf("Helper helper") + 1)?.qualifiedName).to.equal("test.Helper");
+            expect(resolver?.resolveAt(source.indexOf("Util util") + 1)?.qualifiedName).to.equal("other.Util");
+            expect(requests).to.include.members(["test", "other"]);
+        });
+
+        it("should resolve units again when a package is invalidated", () => {
+            const sources = { ...packages, other: { ...packages.other } };
+            const { provider } = createProvider(sources);
+            const workspace = createWorkspace(createLazySymbolIndex(provider, parser));
+
+            const source = "package test;\n\nimport other.*;\n\npublic class Main { private Util util; }";
+            workspace.set("test/Main.java", parseUnit(parser.parse(source), source));
+            expect(workspace.usages.usages("other.Util").map((u) => u.unitId)).to.deep.equal(["test/Main.java"]);
+
+            sources.other["other/Util.java"] = "package other;\n\npublic class Renamed {}";
+            expect(workspace.invalidate("other")).to.deep.equal(["test/Main.java"]);
+            expect(workspace.usages.usages("other.Util")).to.be.empty;
+            expect(workspace.invalidate("missing")).to.be.empty;
+        });
+    });
+});
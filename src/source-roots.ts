@@ -0,0 +1,225 @@
+import { Parser } from "@lezer/common";
+import { parseDeclarations } from "./declarations.js";
+import { SourceFile } from "./indexer.js";
+import { ModuleInfo } from "./modules.js";
+import { ExternalTypeReference } from "./resolver.js";
+import { cachePackagesLookup, createExternalSymbolIndex, ExternalSymbolIndex } from "./symbol-index.js";
+import { unitTypeReferences } from "./workspace.js";
+
+/**
+ * Access to the source files of a project by package, e.g. over source directories.
+ */
+export interface SourceRootProvider {
+    /**
+     * Lists the source files of a package, not including subpackages.
+     *
+     * @param packageName - The package name, empty for the default package
+     * @returns The files of the package in every source root, empty if there are none
+     */
+    packageFiles(packageName: string): SourceFile[];
+
+    /**
+     * Lists the `module-info.java` files of the source roots, if they have any.
+     *
+     * @returns The module declaration files, empty if the source roots aren't modular
+     */
+    moduleFiles?(): SourceFile[];
+}
+
+/**
+ * Symbol index over source roots, loading the types of a package when it's first looked up.
+ */
+export interface LazySymbolIndex extends ExternalSymbolIndex {
+    /** The packages loaded so far, not including the ones looked up without any files. */
+    readonly loadedPackages: ReadonlySet<string>;
+
+    /**
+     * The modules declared by the source roots, read on first access.
+     *
+     * Pass them to {@link createWorkspace} along with the index, so that module imports see their exports.
+     */
+    readonly modules: readonly ModuleInfo[];
+
+    /**
+     * Loads the types of a package, unless they were loaded already.
+     *
+     * @param packageName - The package name
+     * @returns The references declared by the package's files
+     */
+    loadPackage(packageName: string): readonly ExternalTypeReference[];
+
+    /**
+     * Forgets the types of a package, e.g. after its files changed, to be loaded again on the next lookup.
+     * A workspace over the index should be told with {@link Workspace.invalidate} instead,
+     * which also resolves the units that looked up the package again.
+     *
+     * @param packageName - The package name
+     * @returns Whether the package was loaded or looked up without finding any files
+     */
+    invalidate(packageName: string): boolean;
+}
+
+// the package prefixes of a qualified name, longest first, e.g. com.foo.Outer then com.foo for com.foo.Outer.Inner
+function* packageCandidates(qualifiedName: string): Generator<string, void, undefined> {
+    for (let index = qualifiedName.lastIndexOf("."); index !== -1; index = qualifiedName.lastIndexOf(".", index - 1)) {
+        yield qualifiedName.slice(0, index);
+    }
+}
+
+/**
+ * Creates a symbol index over source roots.
+ *
+ * Packages are loaded on demand, by looking up a type in them or by a fully qualified name within them,
+ * so the cost of resolving a unit is proportional to the packages it references rather than the size of the project.
+ * A qualified name is looked up in its longest prefix first, and in shorter prefixes, as a nested type, only while
+ * the longer ones have no files. Packages without files are remembered and not listed again until invalidated.
+ * Files are parsed with {@link parseDeclarations}, skipping their bodies, and only their type references are kept.
+ * Lookups by module are answered by the external references, then by the exports of the source roots' modules.
+ *
+ * @param provider - The source files by package,
+ *                   e.g. {@link createSourceRootProvider} from `@katana-project/laser/node`
+ * @param parser - The parser to parse the files with, usually `@lezer/java`'s
+ * @param external - References outside of the source roots, e.g. the JDK, looked up first
+ * @returns The symbol index
+ */
+export const createLazySymbolIndex = (
+    provider: SourceRootProvider,
+    parser: Parser,
+    external: ExternalSymbolIndex = createExternalSymbolIndex()
+): LazySymbolIndex => {
+    const local = createExternalSymbolIndex();
+    // package -> references loaded from its files, which may declare other packages
+    const loaded = new Map<string, ExternalTypeReference[]>();
+    // packages looked up without any files
+    const missing = new Set<string>();
+    let invalidations = 0;
+
+    let modules: ModuleInfo[] | null = null;
+    const readModules = (): ModuleInfo[] => {
+        if (!modules) {
+            const files = provider.moduleFiles?.() ?? [];
+            modules = files.flatMap((file) => parseDeclarations(parser, file.source).module ?? []);
+        }
+        return modules;
+    };
+
+    const load = (packageName: string): ExternalTypeReference[] => {
+        const loadedRefs = loaded.get(packageName);
+        if (loadedRefs) {
+            return loadedRefs;
+        }
+        if (missing.has(packageName)) {
+            return [];
+        }
+
+        const files = provider.packageFiles(packageName);
+        if (files.length === 0) {
+            missing.add(packageName);
+            return [];
+        }
+
+        const refs: ExternalTypeReference[] = [];
+        loaded.set(packageName, refs);
+
+        const before = local.version;
+        let misplaced = false;
+        for (const file of files) {
+            const unit = parseDeclarations(parser, file.source);
+            for (const ref of unitTypeReferences(unit)) {
+                refs.push(ref);
+                local.add(ref);
+                misplaced ||=
+                    ref.packageName !== packageName && (loaded.has(ref.packageName) || missing.has(ref.packageName));
+            }
+        }
+
+        // loading only answers lookups that weren't made yet, unless a file is in the wrong directory
+        // and adds to a package looked up before, which changes earlier answers
+        if (misplaced && local.version !== before) {
+            invalidations++;
+        }
+        return refs;
+    };
+
+    const index: LazySymbolIndex = {
+        get size() {
+            return external.size + local.size;
+        },
+        get version() {
+            return external.version + invalidations;
+        },
+        get loadedPackages() {
+            return new Set(loaded.keys());
+        },
+        get modules() {
+            return readModules();
+        },
+        loadPackage: load,
+        byQualifiedName(qualifiedName: string) {
+            const found = external.byQualifiedName(qualifiedName) ?? local.byQualifiedName(qualifiedName);
+            if (found) {
+                return found;
+            }
+
+            for (const packageName of packageCandidates(qualifiedName)) {
+                // loaded packages had their chance above
+                if (!loaded.has(packageName) && !missing.has(packageName)) {
+                    load(packageName);
+
+                    const loadedRef = local.byQualifiedName(qualifiedName);
+                    if (loadedRef) {
+                        return loadedRef;
+                    }
+                }
+                // an existing package is the one the name is in, a shorter prefix would make it a nested type
+                if (loaded.has(packageName)) {
+                    return null;
+                }
+            }
+            return null;
+        },
+        byPackage(packageName: string, name: string) {
+            const found = external.byPackage(packageName, name);
+            if (found) {
+                return found;
+            }
+
+            load(packageName);
+            return local.byPackage(packageName, name);
+        },
+        byPackages: (packages: readonly string[], name: string) => byPackages(packages, name),
+        byModule(moduleName: string, name: string) {
+            const found = external.byModule(moduleName, name);
+            if (found) {
+                return found;
+            }
+
+            // the types of a module in the source roots are the ones in its exported packages
+            const module = readModules().find((m) => m.name === moduleName);
+            return module ? byPackages(module.exports, name) : null;
+        },
+        invalidate(packageName: string) {
+            // the package may have files now, changing the answers of lookups made without them
+            if (missing.delete(packageName)) {
+                invalidations++;
+                return true;
+            }
+
+            const refs = loaded.get(packageName);
+            if (!refs) {
+                return false;
+            }
+
+            for (const ref of refs) {
+                local.delete(ref);
+            }
+            loaded.delete(packageName);
+            invalidations++;
+            return true;
+        },
+    };
+
+    // loading happens within the package lookups, so answers only change with the version
+    const byPackages = cachePackagesLookup(index);
+    return index;
+};
@@ -0,0 +1,77 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { readFileSync } from "fs";
+import { createStringInterner, createSummarizedUnit, summarizeUnit } from "./summary.js";
+import { parseUnit } from "./unit.js";
+
+describe("Unit summaries", () => {
+    const path = "samples/sample/inheritance/Diamond.java";
+    const source = readFileSync(path, "utf-8");
+
+    describe("createStringInterner", () => {
+        it("should return one instance per distinct string", () => {
+            const interner = createStringInterner();
+            const first = interner.intern("java.util.List");
+
+            expect(interner.intern(["java", "util", "List"].join("."))).to.equal(first);
+            expect(interner.intern("List")).to.equal("List");
+            expect(interner.size).to.equal(2);
+        });
+    });
+
+    describe("summarizeUnit", () => {
+        it("should share names between summaries through an interner", () => {
+            const interner = createStringInterner();
+            const first = summarizeUnit(parseUnit(parser.parse(source), source), interner);
+            const size = interner.size;
+            const second = summarizeUnit(parseUnit(parser.parse(source), source), interner);
+
+            expect(second).to.deep.equal(first);
+            expect(interner.size).to.equal(size);
+            expect(first.types.map((t) => t.qualifiedName)).to.include("Diamond.Root");
+        });
+
+        it("should keep the offsets of declarations and references", () => {
+            const summary = summarizeUnit(parseUnit(parser.parse(source), source));
+
+            for (const type of summary.types) {
+                expect(source.slice(type.from, type.to)).to.include(type.name);
+            }
+            expect(summary.references.length).to.be.greaterThan(0);
+            for (let i = 0; i < summary.references.length; i += 3) {
+                expect(summary.references[i]).to.be.lessThan(summary.references[i + 1]);
+                expect(summary.references[i + 1]).to.be.at.most(source.length);
+            }
+        });
+    });
+
+    describe("createSummarizedUnit", () => {
+        it("should re-parse the unit on demand", () => {
+            let loads = 0;
+            const unit = parseUnit(parser.parse(source), source);
+            const summarized = createSummarizedUnit(
+                summarizeUnit(unit),
+                () => {
+                    loads++;
+                    return readFileSync(path, "utf-8");
+                },
+                parser,
+                unit
+            );
+
+            expect(summarized.hydrated).to.be.true;
+            expect(summarized.unit()).to.equal(unit);
+
+            summarized.release();
+            expect(summarized.hydrated).to.be.false;
+            expect(loads).to.equal(0);
+
+            const rehydrated = summarized.unit();
+            expect(loads).to.equal(1);
+            expect(summarized.unit()).to.equal(rehydrated);
+            expect(rehydrated.types.map((t) => [t.qualifiedName, t.node.from, t.node.to])).to.deep.equal(
+                summarized.summary.types.map((t) => [t.qualifiedName, t.from, t.to])
+            );
+        });
+    });
+});
@@ -0,0 +1,215 @@
+import { Input, Parser } from "@lezer/common";
+import { ModuleInfo } from "./modules.js";
+import { collectTypeReferences } from "./resolver.js";
+import { CompilationUnit, ImportInfo, parseUnit, TypeInfo } from "./unit.js";
+
+/**
+ * Import statement information without its syntax node.
+ */
+export interface ImportSummary {
+    kind: ImportInfo["kind"];
+    importedName: string;
+    from: number;
+    to: number;
+}
+
+/**
+ * Type declaration information without its syntax node.
+ */
+export interface TypeSummary {
+    kind: TypeInfo["kind"];
+    name: string;
+    qualifiedName: string; // without package prefix, includes enclosing types
+    typeParameters: string[];
+    from: number;
+    to: number;
+
+    /** The unresolved name in the `extends` clause of a class, see {@link TypeInfo.superclass}. */
+    superclass: string | null;
+    /** The unresolved names of the implemented or extended interfaces, see {@link TypeInfo.interfaces}. */
+    interfaces: string[];
+    /** The unresolved names of the permitted subtypes, see {@link TypeInfo.permits}. */
+    permits: string[];
+    /** Whether no other unit can name the type, see {@link TypeInfo.local}. */
+    local: boolean;
+}
+
+/**
+ * Compact, structured-clone friendly summary of a compilation unit.
+ *
+ * Holds no tree or syntax nodes, so it can be posted between workers or serialized.
+ */
+export interface UnitSummary {
+    packageName: string | null;
+    imports: ImportSummary[];
+    types: TypeSummary[];
+    /** The module declared by a `module-info` unit, see {@link CompilationUnit.module}. */
+    module: ModuleInfo | null;
+
+    /** Distinct type reference names, indexed by {@link references}. */
+    referenceNames: string[];
+    /** Collected type references as `from, to, name index` triples, in document order. */
+    references: Int32Array;
+}
+
+/**
+ * Pool of canonical string instances, shared by summaries so each distinct name is held once.
+ */
+export interface StringInterner {
+    /** The number of distinct strings held. */
+    readonly size: number;
+
+    /**
+     * Finds the canonical instance of a string, adding a copy of it if there is none yet.
+     *
+     * @param value - The string
+     * @returns The canonical instance
+     */
+    intern(value: string): string;
+}
+
+/**
+ * Creates an empty string interner.
+ *
+ * @returns The string interner
+ */
+export const createStringInterner = (): StringInterner => {
+    const strings = new Map<string, string>();
+
+    return {
+        get size() {
+            return strings.size;
+        },
+        intern(value: string) {
+            let interned = strings.get(value);
+            if (interned === undefined) {
+                // engines may keep substrings as views into the source they were sliced from,
+                // concatenating makes one new string to slice from instead, without a per-character copy
+                interned = (" " + value).slice(1);
+                strings.set(interned, interned);
+            }
+            return interned;
+        },
+    };
+};
+
+/**
+ * Summarizes a compilation unit, collecting its type references.
+ *
+ * @param unit - The compilation unit
+ * @param interner - The interner to share names through, names are copied out of the source if omitted
+ * @returns The unit summary
+ */
+export const summarizeUnit = (
+    unit: CompilationUnit,
+    interner: StringInterner = createStringInterner()
+): UnitSummary => {
+    const intern = (value: string) => interner.intern(value);
+    const refs = collectTypeReferences(unit);
+
+    const referenceNames: string[] = [];
+    const nameIds = new Map<string, number>();
+    const references = new Int32Array(refs.length * 3);
+    for (let i = 0; i < refs.length; i++) {
+        const ref = refs[i];
+
+        let nameId = nameIds.get(ref.name);
+        if (nameId === undefined) {
+            nameId = referenceNames.push(intern(ref.name)) - 1;
+            nameIds.set(ref.name, nameId);
+        }
+
+        references[i * 3] = ref.node.from;
+        references[i * 3 + 1] = ref.node.to;
+        references[i * 3 + 2] = nameId;
+    }
+
+    return {
+        packageName: unit.packageName === null ? null : intern(unit.packageName),
+        imports: unit.imports.map((imp) => ({
+            kind: imp.kind,
+            importedName: intern(imp.importedName),
+            from: imp.node.from,
+            to: imp.node.to,
+        })),
+        types: unit.types.map((type) => ({
+            kind: type.kind,
+            name: intern(type.name),
+            qualifiedName: intern(type.qualifiedName),
+            typeParameters: type.typeParameters.map(intern),
+            from: type.node.from,
+            to: type.node.to,
+            superclass: type.superclass ? intern(type.superclass.name) : null,
+            interfaces: type.interfaces.map((ref) => intern(ref.name)),
+            permits: type.permits.map((ref) => intern(ref.name)),
+            local: type.local,
+        })),
+        module: unit.module && {
+            name: intern(unit.module.name),
+            exports: unit.module.exports.map(intern),
+            requiresTransitive: unit.module.requiresTransitive.map(intern),
+        },
+        referenceNames,
+        references,
+    };
+};
+
+/**
+ * A unit held as its summary, parsed again when the full unit is needed.
+ *
+ * Only the summary stays resident, so memory scales with the number of symbols rather than the size of the source.
+ */
+export interface SummarizedUnit {
+    readonly summary: UnitSummary;
+    /** Whether the full unit is currently held. */
+    readonly hydrated: boolean;
+
+    /**
+     * Gets the full unit, re-reading and re-parsing the source if it isn't held.
+     *
+     * @returns The compilation unit
+     */
+    unit(): CompilationUnit;
+
+    /**
+     * Drops the full unit, keeping only the summary.
+     */
+    release(): void;
+}
+
+/**
+ * Creates a summarized unit.
+ *
+ * The source must be the one the summary was made from, the offsets in the summary refer to it.
+ *
+ * @param summary - The unit summary
+ * @param load - The source loader, e.g. reading the file again
+ * @param parser - The parser to parse the source with, usually `@lezer/java`'s
+ * @param unit - The full unit the summary was made from, to hold until it's released
+ * @returns The summarized unit
+ */
+export const createSummarizedUnit = (
+    summary: UnitSummary,
+    load: () => string | Input,
+    parser: Parser,
+    unit: CompilationUnit | null = null
+): SummarizedUnit => {
+    let current = unit;
+
+    return {
+        summary,
+        get hydrated() {
+            return current !== null;
+        },
+        unit() {
+            if (!current) {
+                const source = load();
+                current = parseUnit(parser.parse(source), source);
+            }
+            return current;
+        },
+        release() {
+            current = null;
+        },
+    };
+};
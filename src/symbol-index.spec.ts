@@ -0,0 +1,208 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { createTypeReferenceResolver, ExternalTypeReference } from "./resolver.js";
+import { cachePackagesLookup, createExternalSymbolIndex } from "./symbol-index.js";
+import { parseUnit } from "./unit.js";
+
+describe("External Symbol Index", () => {
+    const refs: ExternalTypeReference[] = [
+        { name: "List", qualifiedName: "java.util.List", packageName: "java.util", moduleName: "java.base" },
+        { name: "Map", qualifiedName: "java.util.Map", packageName: "java.util", moduleName: "java.base" },
+        { name: "Map.Entry", qualifiedName: "java.util.Map.Entry", packageName: "java.util", moduleName: "java.base" },
+        { name: "String", qualifiedName: "java.lang.String", packageName: "java.lang", moduleName: "java.base" },
+        { name: "Helper", qualifiedName: "test.Helper", packageName: "test", moduleName: null },
+        { name: "List", qualifiedName: "java.awt.List", packageName: "java.awt", moduleName: "java.desktop" },
+    ];
+    const index = createExternalSymbolIndex(refs);
+
+    describe("lookups", () => {
+        it("should count indexed references", () => {
+            expect(index.size).to.equal(refs.length);
+        });
+
+        it("should find by qualified name", () => {
+            expect(index.byQualifiedName("java.util.List")).to.equal(refs[0]);
+            expect(index.byQualifiedName("java.awt.List")).to.equal(refs[5]);
+            expect(index.byQualifiedName("java.util.Set")).to.be.null;
+        });
+
+        it("should find by package and name", () => {
+            expect(index.byPackage("java.util", "Map")).to.equal(refs[1]);
+            expect(index.byPackage("test", "Helper")).to.equal(refs[4]);
+            expect(index.byPackage("test", "Map")).to.be.null;
+        });
+
+        it("should find by name in the first package that has it", () => {
+            expect(index.byPackages(["java.awt", "java.util"], "List")).to.equal(refs[5]);
+            expect(index.byPackages(["java.lang", "java.util"], "List")).to.equal(refs[0]);
+            expect(index.byPackages(["java.lang", "test"], "List")).to.be.null;
+        });
+
+        it("should find by module and name", () => {
+            expect(index.byModule("java.base", "List")).to.equal(refs[0]);
+            expect(index.byModule("java.desktop", "List")).to.equal(refs[5]);
+            expect(index.byModule("java.base", "Entry")).to.equal(refs[2]);
+            expect(index.byModule("java.base", "Map.Entry")).to.equal(refs[2]);
+            expect(index.byModule("java.base", "Helper")).to.be.null;
+        });
+
+        it("should prefer the first reference like a linear scan", () => {
+            const duplicate = { ...refs[0] };
+            const dupIndex = createExternalSymbolIndex([...refs, duplicate]);
+
+            expect(dupIndex.byQualifiedName("java.util.List")).to.equal(refs[0]);
+            expect(dupIndex.byPackage("java.util", "List")).to.equal(refs[0]);
+            expect(dupIndex.byModule("java.base", "List")).to.equal(refs[0]);
+        });
+    });
+
+    describe("updates", () => {
+        it("should add and delete references", () => {
+            const mutable = createExternalSymbolIndex();
+            mutable.add(refs[0]);
+            mutable.add(refs[5]);
+
+            expect(mutable.size).to.equal(2);
+            expect(mutable.byModule("java.desktop", "List")).to.equal(refs[5]);
+
+            expect(mutable.delete(refs[5])).to.be.true;
+            expect(mutable.delete(refs[5])).to.be.false;
+            expect(mutable.size).to.equal(1);
+            expect(mutable.byQualifiedName("java.awt.List")).to.be.null;
+            expect(mutable.byPackage("java.awt", "List")).to.be.null;
+            expect(mutable.byModule("java.desktop", "List")).to.be.null;
+        });
+
+        it("should fall back to the next reference after a delete", () => {
+            const duplicate = { ...refs[0] };
+            const mutable = createExternalSymbolIndex([refs[0], duplicate]);
+
+            mutable.delete(refs[0]);
+            expect(mutable.byQualifiedName("java.util.List")).to.equal(duplicate);
+            expect(mutable.byPackage("java.util", "List")).to.equal(duplicate);
+            expect(mutable.byModule("java.base", "List")).to.equal(duplicate);
+        });
+
+        it("should answer packages lookups again after an update", () => {
+            const mutable = createExternalSymbolIndex([refs[0]]);
+            const packages = ["java.awt", "java.util"];
+
+            expect(mutable.byPackages(packages, "List")).to.equal(refs[0]);
+            mutable.add(refs[5]);
+            expect(mutable.byPackages(packages, "List")).to.equal(refs[5]);
+            mutable.delete(refs[5]);
+            expect(mutable.byPackages(packages, "List")).to.equal(refs[0]);
+        });
+
+        it("should change the version on every update", () => {
+            const mutable = createExternalSymbolIndex();
+            const initial = mutable.version;
+
+            mutable.add(refs[0]);
+            const added = mutable.version;
+            expect(added).to.not.equal(initial);
+
+            mutable.delete(refs[1]);
+            expect(mutable.version).to.equal(added);
+
+            mutable.delete(refs[0]);
+            expect(mutable.version).to.not.equal(added);
+        });
+    });
+
+    describe("cachePackagesLookup", () => {
+        it("should look up each name in the packages once per version", () => {
+            const probes: string[] = [];
+            let version = 0;
+            const lookup = cachePackagesLookup({
+                get version() {
+                    return version;
+                },
+                byPackage(packageName: string, name: string) {
+                    probes.push(packageName);
+                    return index.byPackage(packageName, name);
+                },
+            });
+            const packages = ["java.lang", "java.util"];
+
+            expect(lookup(packages, "List")).to.equal(refs[0]);
+            expect(lookup(packages, "List")).to.equal(refs[0]);
+            expect(lookup(packages, "Set")).to.be.null;
+            expect(lookup(packages, "Set")).to.be.null;
+            expect(probes).to.deep.equal(["java.lang", "java.util", "java.lang", "java.util"]);
+
+            version++;
+            expect(lookup(packages, "List")).to.equal(refs[0]);
+            expect(probes).to.have.lengthOf(6);
+        });
+    });
+
+    describe("resolver integration", () => {
+        const source = `package test;
+
+import java.util.*;
+import module java.desktop;
+
+public class Test {
+  private List<String> items;
+  private Helper helper;
+  private Map.Entry<String, String> entry;
+}`;
+        const tree = parser.parse(source);
+        const unit = parseUnit(tree, source);
+
+        it("should resolve the same with an array and an index", () => {
+            const fromArray = createTypeReferenceResolver(unit, refs).resolveAll();
+            const fromIndex = createTypeReferenceResolver(unit, index).resolveAll();
+
+            expect(fromIndex.map((r) => [r.kind, r.name, r.qualifiedName])).to.deep.equal(
+                fromArray.map((r) => [r.kind, r.name, r.qualifiedName])
+            );
+        });
+
+        it("should resolve through the index", () => {
+            const resolver = createTypeReferenceResolver(unit, index);
+
+            const list = resolver.resolveAt(source.indexOf("List<String>") + 1);
+            expect(list?.qualifiedName).to.equal("java.util.List");
+
+            const string = resolver.resolveAt(source.indexOf("String> items") + 1);
+            expect(string?.qualifiedName).to.equal("java.lang.String");
+
+            const helper = resolver.resolveAt(source.indexOf("Helper helper") + 1);
+            expect(helper?.qualifiedName).to.equal("test.Helper");
+        });
+
+        it("should memoize resolutions by name, including misses", () => {
+            const resolver = createTypeReferenceResolver(unit, index);
+            const resolved = resolver.resolveAll();
+            // declared types are found through the scopes, not the memo
+            const imported = resolved.filter((r) => r.kind !== "declared");
+            const names = new Set(imported.map((r) => r.ref.name));
+
+            expect(resolver.cacheStats.misses).to.be.at.least(names.size);
+            const misses = resolver.cacheStats.misses;
+
+            // every name was seen before, resolved or not
+            const again = resolver.resolveAll();
+            expect(resolver.cacheStats.misses).to.equal(misses);
+            expect(resolver.cacheStats.hits).to.be.at.least(imported.length);
+            expect(again.map((r) => r.qualifiedName)).to.deep.equal(resolved.map((r) => r.qualifiedName));
+            expect(again.map((r) => r.ref)).to.deep.equal(resolved.map((r) => r.ref));
+        });
+
+        it("should invalidate memoized resolutions when the index changes", () => {
+            const mutable = createExternalSymbolIndex(refs.filter((r) => r.name !== "Helper"));
+            const resolver = createTypeReferenceResolver(unit, mutable);
+            const offset = source.indexOf("Helper helper") + 1;
+
+            expect(resolver.resolveAt(offset)).to.be.null;
+            expect(resolver.resolveAt(offset)).to.be.null;
+            expect(resolver.cacheStats.hits).to.equal(1);
+
+            mutable.add(refs[4]);
+            expect(resolver.resolveAt(offset)?.qualifiedName).to.equal("test.Helper");
+            expect(resolver.cacheStats.invalidations).to.equal(1);
+        });
+    });
+});
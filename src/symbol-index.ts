@@ -0,0 +1,262 @@
+import { ExternalTypeReference } from "./resolver.js";
+
+/**
+ * Prebuilt lookup table over external type references.
+ *
+ * Replaces linear scans over an `ExternalTypeReference[]` with hash lookups,
+ * which matters once the full JDK and a dependency classpath are passed in.
+ */
+export interface ExternalSymbolIndex {
+    /** The number of indexed references. */
+    readonly size: number;
+
+    /** A counter changed whenever the indexed references change, for invalidating lookups cached elsewhere. */
+    readonly version: number;
+
+    /**
+     * Finds the first indexed reference with the given fully qualified name.
+     *
+     * @param qualifiedName - The fully qualified name, e.g. `java.util.List`
+     * @returns The matching reference or null
+     */
+    byQualifiedName(qualifiedName: string): ExternalTypeReference | null;
+
+    /**
+     * Finds the first indexed reference declared in a package with the given name.
+     *
+     * @param packageName - The package name, empty for the default package
+     * @param name - The type name, as in {@link ExternalTypeReference.name}
+     * @returns The matching reference or null
+     */
+    byPackage(packageName: string, name: string): ExternalTypeReference | null;
+
+    /**
+     * Finds the first indexed reference with the given name in any of the packages, e.g. the exports of a module.
+     *
+     * @param packages - The package names, in lookup order
+     * @param name - The type name, as in {@link ExternalTypeReference.name}
+     * @returns The matching reference or null
+     */
+    byPackages(packages: readonly string[], name: string): ExternalTypeReference | null;
+
+    /**
+     * Finds the first indexed reference in a module, matching either its name or a suffix of its qualified name.
+     *
+     * @param moduleName - The module name, e.g. `java.base`
+     * @param name - The (possibly qualified) type name
+     * @returns The matching reference or null
+     */
+    byModule(moduleName: string, name: string): ExternalTypeReference | null;
+}
+
+/**
+ * External symbol index that can be updated in place.
+ */
+export interface MutableExternalSymbolIndex extends ExternalSymbolIndex {
+    /**
+     * Adds a reference to the index.
+     *
+     * @param ref - The reference to add, looked up after any reference added before it
+     */
+    add(ref: ExternalTypeReference): void;
+
+    /**
+     * Removes a previously added reference from the index.
+     *
+     * @param ref - The reference to remove, compared by identity
+     * @returns Whether the reference was indexed
+     */
+    delete(ref: ExternalTypeReference): boolean;
+}
+
+const lastSegment = (name: string): string => {
+    const index = name.lastIndexOf(".");
+    return index === -1 ? name : name.slice(index + 1);
+};
+
+// module lookups match either the name or a qualified name suffix, so bucket by both last segments
+const moduleKeys = (ref: ExternalTypeReference): string[] => {
+    const nameKey = lastSegment(ref.name);
+    const qualifiedKey = lastSegment(ref.qualifiedName);
+    return nameKey === qualifiedKey ? [nameKey] : [nameKey, qualifiedKey];
+};
+
+const addToBucket = <K, V>(map: Map<K, V[]>, key: K, value: V) => {
+    const bucket = map.get(key);
+    if (bucket) {
+        bucket.push(value);
+    } else {
+        map.set(key, [value]);
+    }
+};
+
+const deleteFromBucket = <K, V>(map: Map<K, V[]>, key: K, value: V): boolean => {
+    const bucket = map.get(key);
+    const index = bucket ? bucket.indexOf(value) : -1;
+    if (index === -1) {
+        return false;
+    }
+
+    if (bucket.length === 1) {
+        map.delete(key);
+    } else {
+        bucket.splice(index, 1);
+    }
+    return true;
+};
+
+const nestedMap = <K1, K2, V>(map: Map<K1, Map<K2, V>>, key: K1): Map<K2, V> => {
+    let nested = map.get(key);
+    if (!nested) {
+        nested = new Map();
+        map.set(key, nested);
+    }
+    return nested;
+};
+
+/**
+ * Creates a {@link ExternalSymbolIndex.byPackages} lookup over the package lookups of an index.
+ *
+ * Answers are kept per packages array until the index version changes, so given the same array for the same packages,
+ * e.g. the closures of a module graph, which are replaced whenever the graph changes,
+ * every name is looked up in the packages once rather than on every lookup.
+ *
+ * @param index - The index to look up in
+ * @returns The lookup
+ */
+export const cachePackagesLookup = (
+    index: Pick<ExternalSymbolIndex, "version" | "byPackage">
+): ExternalSymbolIndex["byPackages"] => {
+    // packages -> name -> answer, null for a miss
+    let answers = new WeakMap<readonly string[], Map<string, ExternalTypeReference | null>>();
+    let answersVersion = index.version;
+
+    return (packages: readonly string[], name: string) => {
+        if (index.version !== answersVersion) {
+            answers = new WeakMap();
+            answersVersion = index.version;
+        }
+
+        let names = answers.get(packages);
+        if (!names) {
+            names = new Map();
+            answers.set(packages, names);
+        }
+
+        let found = names.get(name);
+        if (found === undefined) {
+            found = null;
+            for (const pkg of packages) {
+                found = index.byPackage(pkg, name);
+                if (found) {
+                    break;
+                }
+            }
+            names.set(name, found);
+        }
+        return found;
+    };
+};
+
+/**
+ * Creates an index over external type references.
+ *
+ * Lookups return the same reference a linear scan over `refs` would find first.
+ *
+ * @param refs - The external type references to index
+ * @returns The symbol index
+ */
+export const createExternalSymbolIndex = (
+    refs: Iterable<ExternalTypeReference> = []
+): MutableExternalSymbolIndex => {
+    // every bucket keeps insertion order, the first entry is the one a linear scan would find
+    const qualified = new Map<string, ExternalTypeReference[]>();
+    const packages = new Map<string, Map<string, ExternalTypeReference[]>>();
+    // module name -> last name segment -> candidates
+    const modules = new Map<string, Map<string, ExternalTypeReference[]>>();
+
+    let size = 0;
+    let version = 0;
+
+    const byPackage = (packageName: string, name: string) => packages.get(packageName)?.get(name)?.[0] ?? null;
+    const byPackages = cachePackagesLookup({
+        get version() {
+            return version;
+        },
+        byPackage,
+    });
+
+    const index: MutableExternalSymbolIndex = {
+        get size() {
+            return size;
+        },
+        get version() {
+            return version;
+        },
+        byQualifiedName(qualifiedName: string) {
+            return qualified.get(qualifiedName)?.[0] ?? null;
+        },
+        byPackage,
+        byPackages,
+        byModule(moduleName: string, name: string) {
+            const bucket = modules.get(moduleName)?.get(lastSegment(name));
+            if (!bucket) {
+                return null;
+            }
+
+            const suffix = `.${name}`;
+            for (const ref of bucket) {
+                if (ref.name === name || ref.qualifiedName.endsWith(suffix)) {
+                    return ref;
+                }
+            }
+            return null;
+        },
+        add(ref: ExternalTypeReference) {
+            size++;
+            version++;
+
+            addToBucket(qualified, ref.qualifiedName, ref);
+            if (ref.packageName !== null && ref.packageName !== undefined) {
+                addToBucket(nestedMap(packages, ref.packageName), ref.name, ref);
+            }
+            if (ref.moduleName) {
+                const types = nestedMap(modules, ref.moduleName);
+                for (const key of moduleKeys(ref)) {
+                    addToBucket(types, key, ref);
+                }
+            }
+        },
+        delete(ref: ExternalTypeReference) {
+            if (!deleteFromBucket(qualified, ref.qualifiedName, ref)) {
+                return false;
+            }
+
+            size--;
+            version++;
+            if (ref.packageName !== null && ref.packageName !== undefined) {
+                const types = packages.get(ref.packageName);
+                if (types && deleteFromBucket(types, ref.name, ref) && types.size === 0) {
+                    packages.delete(ref.packageName);
+                }
+            }
+            if (ref.moduleName) {
+                const types = modules.get(ref.moduleName);
+                if (types) {
+                    for (const key of moduleKeys(ref)) {
+                        deleteFromBucket(types, key, ref);
+                    }
+                    if (types.size === 0) {
+                        modules.delete(ref.moduleName);
+                    }
+                }
+            }
+            return true;
+        },
+    };
+
+    for (const ref of refs) {
+        index.add(ref);
+    }
+    return index;
+};
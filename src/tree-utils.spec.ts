@@ -1,6 +1,15 @@
 import { parser } from "@run-slicer/lezer-java";
 import { expect } from "chai";
-import { findChild, findChildren, findDescendant, findDescendants, getChildren } from "./tree-utils.js";
+import {
+    findChild,
+    findChildren,
+    findDescendant,
+    findDescendants,
+    getChildren,
+    iterChildren,
+    iterDescendants,
+    visitDescendants,
+} from "./tree-utils.js";
 
 describe("Tree Utilities", () => {
     const source = `package test;
@@ -135,6 +144,76 @@ public class Test {
         });
     });
 
+    describe("iterChildren", () => {
+        it("should iterate the same children as getChildren", () => {
+            const names = Array.from(iterChildren(tree.topNode), (ref) => ref.name);
+
+            expect(names).to.deep.equal(getChildren(tree.topNode).map((c) => c.type.name));
+        });
+
+        it("should iterate nothing for leaf nodes", () => {
+            const leaf = findDescendant(tree.topNode, (n) => n.type.name === "StringLiteral");
+
+            expect(Array.from(iterChildren(leaf!))).to.have.lengthOf(0);
+        });
+    });
+
+    describe("iterDescendants", () => {
+        it("should iterate in pre-order, starting with the node itself", () => {
+            const refs = Array.from(iterDescendants(tree.topNode), (ref) => ({ name: ref.name, from: ref.from }));
+
+            expect(refs[0].name).to.equal("Program");
+            expect(refs.filter((r) => r.name === "Identifier")).to.have.lengthOf(
+                findDescendants(tree.topNode, (n) => n.type.name === "Identifier").length
+            );
+            for (let i = 1; i < refs.length; i++) {
+                expect(refs[i].from).to.be.at.least(refs[i - 1].from);
+            }
+        });
+
+        it("should not recurse on deeply nested trees", () => {
+            const depth = 2000;
+            const deepSource = `class Deep { int x = ${"(".repeat(depth)}1${")".repeat(depth)}; }`;
+            const deepTree = parser.parse(deepSource);
+
+            let count = 0;
+            for (const ref of iterDescendants(deepTree.topNode)) {
+                if (ref.name === "ParenthesizedExpression") count++;
+            }
+            expect(count).to.equal(depth);
+            expect(findDescendants(deepTree.topNode, (n) => n.type.name === "IntegerLiteral")).to.have.lengthOf(1);
+        });
+    });
+
+    describe("visitDescendants", () => {
+        it("should skip subtrees", () => {
+            const names: string[] = [];
+            visitDescendants(tree.topNode, (ref) => {
+                names.push(ref.name);
+                if (ref.name === "MethodDeclaration") return "skip";
+            });
+
+            expect(names).to.include("MethodDeclaration");
+            expect(names).to.not.include("StringLiteral");
+            expect(names).to.include("FieldDeclaration");
+        });
+
+        it("should stop early", () => {
+            let visited = 0;
+            const stopped = visitDescendants(tree.topNode, (ref) => {
+                visited++;
+                if (ref.name === "ClassDeclaration") return "stop";
+            });
+
+            expect(stopped).to.be.true;
+            expect(visited).to.be.lessThan(Array.from(iterDescendants(tree.topNode)).length);
+        });
+
+        it("should report walks that weren't stopped", () => {
+            expect(visitDescendants(tree.topNode, () => {})).to.be.false;
+        });
+    });
+
     describe("Complex navigation", () => {
         const complexSource = `package test;
 
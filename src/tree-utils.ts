@@ -1,4 +1,103 @@
-import { SyntaxNode } from "@lezer/common";
+import { SyntaxNode, SyntaxNodeRef } from "@lezer/common";
+
+// the iterators and visitors below hand out a tree cursor as the node reference, moving it as they go,
+// so no syntax node is allocated unless `.node` is called on the reference
+
+/**
+ * Iterates the direct children of a node.
+ *
+ * The reference is only valid until the iterator advances, use its `node` to keep it.
+ *
+ * @param node - The parent node
+ * @returns The child references
+ */
+export function* iterChildren(node: SyntaxNode): Generator<SyntaxNodeRef, void, undefined> {
+    const cursor = node.cursor();
+    if (!cursor.firstChild()) {
+        return;
+    }
+
+    do {
+        yield cursor;
+    } while (cursor.nextSibling());
+}
+
+/**
+ * Iterates a node and its descendants in pre-order, without recursion.
+ *
+ * The reference is only valid until the iterator advances, use its `node` to keep it.
+ *
+ * @param node - The root node, yielded first
+ * @returns The node references
+ */
+export function* iterDescendants(node: SyntaxNode): Generator<SyntaxNodeRef, void, undefined> {
+    const cursor = node.cursor();
+    let depth = 0;
+    for (;;) {
+        yield cursor;
+        if (cursor.firstChild()) {
+            depth++;
+            continue;
+        }
+
+        for (;;) {
+            if (depth === 0) {
+                return;
+            }
+            if (cursor.nextSibling()) {
+                break;
+            }
+
+            cursor.parent();
+            depth--;
+        }
+    }
+}
+
+/**
+ * The action a visitor takes after visiting a node, continuing into its children if nothing is returned.
+ *
+ * `"skip"` doesn't enter the node's children, `"stop"` ends the walk.
+ */
+export type VisitAction = "skip" | "stop" | void;
+
+/**
+ * Visits a node and its descendants in pre-order, without recursion.
+ *
+ * The reference is only valid during the visitor call, use its `node` to keep it.
+ *
+ * @param node - The root node, visited first
+ * @param visitor - The visitor, returning whether to skip the children or stop the walk
+ * @returns Whether the walk was stopped by the visitor
+ */
+export const visitDescendants = (node: SyntaxNode, visitor: (ref: SyntaxNodeRef) => VisitAction): boolean => {
+    const cursor = node.cursor();
+    let depth = 0;
+    for (;;) {
+        const action = visitor(cursor);
+        if (action === "stop") {
+            return true;
+        }
+        if (action !== "skip" && cursor.firstChild()) {
+            depth++;
+            continue;
+        }
+
+        for (;;) {
+            if (depth === 0) {
+                return false;
+            }
+            if (cursor.nextSibling()) {
+                break;
+            }
+
+            cursor.parent();
+            depth--;
+        }
+    }
+};
+
+// the helpers below hand out every child they look at as a syntax node anyway, so they walk the siblings directly
 
 export const getChildren = (node: SyntaxNode): SyntaxNode[] => {
     const children: SyntaxNode[] = [];
@@ -34,34 +133,24 @@ export const findChildren = (node: SyntaxNode, predicate: (child: SyntaxNode) =>
 };
 
 export const findDescendant = (node: SyntaxNode, predicate: (node: SyntaxNode) => boolean): SyntaxNode | null => {
-    if (predicate(node)) {
-        return node;
-    }
-
-    let child = node.firstChild;
-    while (child) {
-        const found = findDescendant(child, predicate);
-        if (found) {
-            return found;
+    let found: SyntaxNode | null = null;
+    visitDescendants(node, (ref) => {
+        const current = ref.node;
+        if (predicate(current)) {
+            found = current;
+            return "stop";
         }
-        child = child.nextSibling;
-    }
-
-    return null;
+    });
+    return found;
 };
 
 export const findDescendants = (node: SyntaxNode, predicate: (node: SyntaxNode) => boolean): SyntaxNode[] => {
     const result: SyntaxNode[] = [];
-
-    if (predicate(node)) {
-        result.push(node);
-    }
-
-    let child = node.firstChild;
-    while (child) {
-        result.push(...findDescendants(child, predicate));
-        child = child.nextSibling;
-    }
-
+    visitDescendants(node, (ref) => {
+        const current = ref.node;
+        if (predicate(current)) {
+            result.push(current);
+        }
+    });
     return result;
 };
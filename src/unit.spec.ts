@@ -1,6 +1,8 @@
 import { parser } from "@run-slicer/lezer-java";
 import { expect } from "chai";
-import { parseUnit } from "./unit.js";
+import { readFileSync } from "fs";
+import { LocalTypeReference } from "./resolver.js";
+import { CompilationUnit, parseUnit, stringInput, updateUnit } from "./unit.js";
 
 describe("Unit Parser", () => {
     describe("Package declaration", () => {
@@ -134,6 +136,27 @@ class Third {}`;
             expect(unit.types).to.have.lengthOf(3);
             expect(unit.types.map((c) => c.name)).to.include.members(["First", "Second", "Third"]);
         });
+
+        it("should extract supertype clauses", () => {
+            const source = `package test;
+public class Child<T extends Bound> extends java.util.AbstractMap<T, List<T>> implements Map.Entry<T, T>, Cloneable {
+  record Point(Integer x) implements Comparable<Point> {}
+}`;
+            const tree = parser.parse(source);
+            const unit = parseUnit(tree, source);
+
+            const child = unit.types[0];
+            expect(child.superclass?.name).to.equal("java.util.AbstractMap");
+            expect(child.interfaces.map((i) => i.name)).to.deep.equal(["Map.Entry", "Cloneable"]);
+            expect(child.permits).to.be.empty;
+            expect(source.slice(child.superclass?.node.from, child.superclass?.node.to)).to.equal(
+                "java.util.AbstractMap"
+            );
+
+            const point = unit.types[1];
+            expect(point.superclass).to.be.null;
+            expect(point.interfaces.map((i) => i.name)).to.deep.equal(["Comparable"]);
+        });
     });
 
     describe("Interface declarations", () => {
@@ -183,6 +206,16 @@ public interface Outer {
             const inner = unit.types.find((i) => i.name === "Inner");
             expect(inner?.qualifiedName).to.equal("Outer.Inner");
         });
+
+        it("should extract extended interfaces", () => {
+            const source = `package test;
+public interface Child<T> extends Parent<T>, Other {}`;
+            const tree = parser.parse(source);
+            const unit = parseUnit(tree, source);
+
+            expect(unit.types[0].superclass).to.be.null;
+            expect(unit.types[0].interfaces.map((i) => i.name)).to.deep.equal(["Parent", "Other"]);
+        });
     });
 
     describe("Enum declarations", () => {
@@ -300,4 +333,234 @@ public class MultiGeneric<K, V, T extends Comparable<T>> {}`;
             expect(unit.types[0].typeParameters).to.deep.equal(["T"]);
         });
     });
+
+    describe("Declared type index", () => {
+        const source = `package test;
+
+public class Outer {
+  class Node {}
+
+  static class Tree {
+    class Node {}
+  }
+}`;
+        const tree = parser.parse(source);
+        const unit = parseUnit(tree, source);
+
+        it("should index types by simple, qualified and fully qualified name", () => {
+            const treeType = unit.types.find((t) => t.name === "Tree");
+
+            expect(unit.declaredTypes.get("Tree")).to.deep.equal([treeType]);
+            expect(unit.declaredTypes.get("Outer.Tree")).to.deep.equal([treeType]);
+            expect(unit.declaredTypes.get("test.Outer.Tree")).to.deep.equal([treeType]);
+            expect(unit.declaredTypes.get("Missing")).to.be.undefined;
+        });
+
+        it("should keep every candidate of a shared name in declaration order", () => {
+            const candidates = unit.declaredTypes.get("Node");
+
+            expect(candidates?.map((t) => t.qualifiedName)).to.deep.equal(["Outer.Node", "Outer.Tree.Node"]);
+            expect(unit.declaredTypes.get("Outer.Tree.Node")).to.have.lengthOf(1);
+        });
+
+        it("should not repeat a type under equal keys", () => {
+            const source = "class Top {}";
+            const unit = parseUnit(parser.parse(source), source);
+
+            expect(unit.declaredTypes.get("Top")).to.have.lengthOf(1);
+        });
+    });
+
+    describe("Chunked input", () => {
+        const source = readFileSync("samples/sample/generics/GenericsMisc.java", "utf-8");
+
+        // a rope-like input over fixed-size chunks, counting the characters read
+        const chunkedInput = (text: string, size: number) => {
+            const chunks: string[] = [];
+            for (let i = 0; i < text.length; i += size) {
+                chunks.push(text.slice(i, i + size));
+            }
+
+            const input = {
+                length: text.length,
+                lineChunks: false,
+                charsRead: 0,
+                chunk: (from: number) => chunks[Math.floor(from / size)].slice(from % size),
+                read(from: number, to: number) {
+                    input.charsRead += to - from;
+                    let result = "";
+                    for (let pos = from; pos < to; pos = (Math.floor(pos / size) + 1) * size) {
+                        const offset = pos % size;
+                        result += chunks[Math.floor(pos / size)].slice(offset, Math.min(size, offset + to - pos));
+                    }
+                    return result;
+                },
+            };
+            return input;
+        };
+
+        it("should parse a unit from an input without joining it", () => {
+            const input = chunkedInput(source, 64);
+            const unit = parseUnit(parser.parse(input), input);
+            const expected = parseUnit(parser.parse(source), source);
+
+            expect(unit.packageName).to.equal(expected.packageName);
+            expect(unit.imports.map((i) => i.importedName)).to.deep.equal(expected.imports.map((i) => i.importedName));
+            expect(unit.types.map((t) => [t.qualifiedName, t.typeParameters])).to.deep.equal(
+                expected.types.map((t) => [t.qualifiedName, t.typeParameters])
+            );
+            expect(input.charsRead).to.be.lessThan(source.length);
+
+            expect(unit.source).to.equal(source);
+        });
+
+        it("should wrap strings", () => {
+            const input = stringInput("class Test {}");
+
+            expect(input.length).to.equal(13);
+            expect(input.read(6, 10)).to.equal("Test");
+            expect(input.chunk(6)).to.equal("Test {}");
+        });
+    });
+
+    describe("Incremental updates", () => {
+        const source = `package test;
+
+import java.util.List;
+
+public class Outer {
+  class Inner {
+    void method() {
+      int x = 1;
+    }
+  }
+
+  void other() {
+    class Local {}
+  }
+}
+
+class Second<T> {}`;
+
+        const edit = (unit: CompilationUnit, search: string, replacement: string) => {
+            const from = unit.source.indexOf(search);
+            const to = from + search.length;
+            const next = unit.source.slice(0, from) + replacement + unit.source.slice(to);
+
+            const changes = [{ fromA: from, toA: to, fromB: from, toB: from + replacement.length }];
+
+            return updateUnit(unit, changes, next, parser);
+        };
+
+        const refSpan = (ref: LocalTypeReference | null) => ref && [ref.name, ref.node.from, ref.node.to];
+
+        const summarize = (unit: CompilationUnit) => ({
+            packageName: unit.packageName,
+            imports: unit.imports.map((i) => [i.kind, i.importedName, i.node.from, i.node.to]),
+            types: unit.types.map((t) => [
+                t.kind,
+                t.name,
+                t.qualifiedName,
+                t.typeParameters,
+                t.node.from,
+                t.node.to,
+                t.local,
+            ]),
+            supertypes: unit.types.map((t) => [t.superclass, ...t.interfaces, ...t.permits].map(refSpan)),
+            declaredTypes: Array.from(unit.declaredTypes, ([key, types]) => [key, types.map((t) => t.node.from)]),
+        });
+
+        const expectFresh = (unit: CompilationUnit) => {
+            expect(summarize(unit)).to.deep.equal(summarize(parseUnit(parser.parse(unit.source), unit.source)));
+        };
+
+        it("should match a full parse after editing a method body", () => {
+            const unit = edit(parseUnit(parser.parse(source), source), "int x = 1;", "String y = null;");
+
+            expectFresh(unit);
+            expect(unit.types.map((t) => t.name)).to.deep.equal(["Outer", "Inner", "Local", "Second"]);
+        });
+
+        it("should shift entries after an insertion", () => {
+            const unit = edit(parseUnit(parser.parse(source), source), "import java.util.List;", "import java.util.*;");
+
+            expectFresh(unit);
+            expect(unit.imports[0].kind).to.equal("wildcard");
+
+            const second = unit.types.find((t) => t.name === "Second");
+            expect(unit.source.slice(second?.node.from, second?.node.to)).to.equal("class Second<T> {}");
+        });
+
+        it("should requalify nested types when an enclosing type is renamed", () => {
+            const unit = edit(parseUnit(parser.parse(source), source), "class Outer", "class Renamed");
+
+            expectFresh(unit);
+            expect(unit.types.find((t) => t.name === "Inner")?.qualifiedName).to.equal("Renamed.Inner");
+            expect(unit.types.find((t) => t.name === "Local")?.qualifiedName).to.equal("Renamed.Local");
+        });
+
+        it("should move supertypes of reused types", () => {
+            const extended = source.replace("class Inner", "class Inner extends Second<String> implements Runnable");
+            const unit = edit(
+                parseUnit(parser.parse(extended), extended),
+                "import java.util.List;",
+                "import java.util.*;"
+            );
+
+            expectFresh(unit);
+
+            const inner = unit.types.find((t) => t.name === "Inner");
+            expect(unit.source.slice(inner?.superclass?.node.from, inner?.superclass?.node.to)).to.equal("Second");
+        });
+
+        it("should pick up added and removed types", () => {
+            const unit = parseUnit(parser.parse(source), source);
+
+            const added = edit(unit, "class Local {}", "class Local {} class Extra {}");
+            expectFresh(added);
+            expect(added.types.find((t) => t.name === "Extra")?.qualifiedName).to.equal("Outer.Extra");
+
+            const removed = edit(added, "class Second<T> {}", "");
+            expectFresh(removed);
+            expect(removed.types.map((t) => t.name)).to.not.include("Second");
+        });
+
+        it("should mark reused types moved into a method as local", () => {
+            const nested = source.replace("void method() {", "class Deep {}\n    void method() {");
+            const from = nested.indexOf("class Inner");
+            const to = nested.indexOf("\n  }", nested.indexOf("int x = 1;")) + 4;
+            const next = `${nested.slice(0, from)}void wrap() { ${nested.slice(from, to)} }${nested.slice(to)}`;
+            const changes = [
+                { fromA: from, toA: from, fromB: from, toB: from + 14 },
+                { fromA: to, toA: to, fromB: to + 14, toB: to + 16 },
+            ];
+            const unit = updateUnit(parseUnit(parser.parse(nested), nested), changes, next, parser);
+
+            expectFresh(unit);
+            expect(unit.types.filter((t) => t.local).map((t) => t.name)).to.deep.equal(["Inner", "Deep", "Local"]);
+        });
+
+        it("should rebind reused entries to the new tree", () => {
+            const prev = parseUnit(parser.parse(source), source);
+            const unit = edit(prev, "class Second<T> {}", "class Second<T> { int y; }");
+
+            // Outer is before the edit and didn't move, its entry is still a new one
+            const outer = unit.types.find((t) => t.name === "Outer");
+            expect(outer).to.not.equal(prev.types.find((t) => t.name === "Outer"));
+
+            let top = outer.node;
+            while (top.parent) {
+                top = top.parent;
+            }
+            expect(top.to).to.equal(unit.source.length);
+        });
+
+        it("should leave the previous unit untouched", () => {
+            const unit = parseUnit(parser.parse(source), source);
+            edit(unit, "package test;", "package other;");
+
+            expect(unit.packageName).to.equal("test");
+            expect(unit.types).to.have.lengthOf(4);
+        });
+    });
 });
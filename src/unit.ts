@@ -1,5 +1,9 @@
-import { SyntaxNode, Tree } from "@lezer/common";
-import { findChild } from "./tree-utils.js";
+import { ChangedRange, Input, Parser, SyntaxNode, Tree, TreeFragment } from "@lezer/common";
+import { ModuleInfo } from "./modules.js";
+import { countNodes, getAnalysisObserver } from "./observer.js";
+import { LocalTypeReference } from "./resolver.js";
+import { buildScopes, PreviousScopes, Scope } from "./scope.js";
+import { findChild, visitDescendants } from "./tree-utils.js";
 
 /**
  * Represents an import statement in a Java source file.
@@ -19,6 +23,16 @@ export interface TypeInfo {
     qualifiedName: string; // without package prefix, includes enclosing types
     node: SyntaxNode;
     typeParameters: string[];
+
+    /** The `extends` clause of a class, unresolved and without type arguments. */
+    superclass: LocalTypeReference | null;
+    /** The `implements` clause of a class, enum or record, or the `extends` clause of an interface. */
+    interfaces: LocalTypeReference[];
+    /** The `permits` clause of a sealed class or interface. */
+    permits: LocalTypeReference[];
+
+    /** Whether the type is declared in a method, initializer or anonymous class, so no other unit can name it. */
+    local: boolean;
 }
 
 /**
@@ -26,14 +40,83 @@ export interface TypeInfo {
  */
 export interface CompilationUnit {
     tree: Tree;
-    source: string;
+    /** The source code, as a Lezer input. Text is read through it, so the source never has to be one string. */
+    input: Input;
+    /** The source code as one string, read from {@link input} on first access when the unit was made from an input. */
+    readonly source: string;
 
     packageName: string | null;
     imports: ImportInfo[];
     types: TypeInfo[];
+
+    /**
+     * The type declarations by simple name, qualified name and fully qualified name.
+     *
+     * Names can be shared by several declarations, e.g. nested types in different enclosing types,
+     * their candidates are in declaration order. Indexed on first access.
+     */
+    readonly declaredTypes: Map<string, TypeInfo[]>;
+
+    /** The unit scope, the root of the lexical scope tree. Built on first access. */
+    readonly scope: Scope;
+
+    /** The directives of the unit's module declaration, if it's a `module-info.java`. */
+    module: ModuleInfo | null;
 }
 
-const extractTypeParameters = (node: SyntaxNode, source: string): string[] => {
+/**
+ * Wraps a string in a Lezer input.
+ *
+ * @param text - The text
+ * @returns The input
+ */
+export const stringInput = (text: string): Input => ({
+    length: text.length,
+    chunk: (from: number) => text.slice(from),
+    lineChunks: false,
+    read: (from: number, to: number) => text.slice(from, to),
+});
+
+// scope trees built so far, so an update can tell whether there are scopes to carry over
+const builtScopes = new WeakMap<CompilationUnit, Scope>();
+
+const createUnit = (
+    tree: Tree,
+    source: string | Input,
+    scopes: (unit: CompilationUnit) => Scope = buildScopes
+): CompilationUnit => {
+    const input = typeof source === "string" ? stringInput(source) : source;
+
+    let text = typeof source === "string" ? source : null;
+    let declaredTypes: Map<string, TypeInfo[]> | null = null;
+    const unit: CompilationUnit = {
+        tree,
+        input,
+        get source() {
+            return (text ??= input.read(0, input.length));
+        },
+        packageName: null,
+        imports: [],
+        types: [],
+        get declaredTypes() {
+            return (declaredTypes ??= indexDeclaredTypes(unit));
+        },
+        get scope() {
+            let scope = builtScopes.get(unit);
+            if (!scope) {
+                scope = scopes(unit);
+                builtScopes.set(unit, scope);
+                // drop what the builder holds on to, e.g. the previous scopes
+                scopes = null;
+            }
+            return scope;
+        },
+        module: null,
+    };
+    return unit;
+};
+
+const extractTypeParameters = (node: SyntaxNode, input: Input): string[] => {
     const typeParamsNode = findChild(node, (c) => c.name === "TypeParameters");
     if (!typeParamsNode) {
         return [];
@@ -45,7 +128,7 @@ const extractTypeParameters = (node: SyntaxNode, source: string): string[] => {
         if (child.name === "TypeParameter") {
             const def = findChild(child, (c) => c.name === "Definition");
             if (def) {
-                params.push(source.slice(def.from, def.to));
+                params.push(input.read(def.from, def.to));
             }
         }
         child = child.nextSibling;
@@ -53,34 +136,173 @@ const extractTypeParameters = (node: SyntaxNode, source: string): string[] => {
     return params;
 };
 
-/**
- * Parses a Java compilation unit from a syntax tree and source code.
- *
- * This expects a `@lezer/java` parsed tree.
- *
- * @param tree - The syntax tree of the Java source file.
- * @param source - The source code of the Java file.
- * @returns The parsed compilation unit information.
- */
-export const parseUnit = (tree: Tree, source: string): CompilationUnit => {
-    const unit: CompilationUnit = {
-        tree,
-        source,
-        packageName: null,
-        imports: [],
-        types: [],
-    };
+const TYPE_BODIES = new Set([
+    "ClassBody",
+    "InterfaceBody",
+    "AnnotationTypeBody",
+    "ModuleBody",
+    "EnumBody",
+    "RecordBody",
+]);
+// header nodes that can't contain supertypes, or contain names that aren't supertypes
+const HEADER_SKIPPED = new Set([
+    "Modifiers",
+    "Definition",
+    "TypeParameters",
+    "TypeArguments",
+    "Annotation",
+    "MarkerAnnotation",
+]);
+
+// supertype names as written, e.g. Map.Entry for Map<K, V>.Entry
+const eraseTypeArguments = (name: string): string => {
+    let erased = name.replace(/\s+/g, "");
+    for (let prev = ""; prev !== erased; ) {
+        prev = erased;
+        erased = erased.replace(/<[^<>]*>/g, "");
+    }
+    return erased;
+};
+
+const extractSupertypes = (node: SyntaxNode, input: Input, type: TypeInfo) => {
+    // keywords are read as leaves rather than by clause node names, permits is contextual and may be an identifier
+    let clause: "extends" | "implements" | "permits" | null = null;
+    for (let child = node.firstChild; child && !TYPE_BODIES.has(child.name); child = child.nextSibling) {
+        if (HEADER_SKIPPED.has(child.name)) {
+            continue;
+        }
+
+        visitDescendants(child, (ref) => {
+            if (HEADER_SKIPPED.has(ref.name)) {
+                return "skip";
+            }
+            if (ref.name === "TypeName" || ref.name === "ScopedTypeName") {
+                if (clause) {
+                    const typeRef = { name: eraseTypeArguments(input.read(ref.from, ref.to)), node: ref.node };
+                    if (clause === "permits") {
+                        type.permits.push(typeRef);
+                    } else if (clause === "implements" || type.kind === "interface") {
+                        type.interfaces.push(typeRef);
+                    } else {
+                        type.superclass = typeRef;
+                    }
+                }
+                return "skip";
+            }
+            if (ref.to - ref.from <= 10 && !ref.node.firstChild) {
+                const text = input.read(ref.from, ref.to);
+                if (text === "extends" || text === "implements" || text === "permits") {
+                    clause = text;
+                }
+            }
+        });
+    }
+};
+
+// the words of a directive that aren't names, whether the grammar gives them keyword nodes or identifiers
+const DIRECTIVE_KEYWORDS = new Set([
+    "requires",
+    "exports",
+    "opens",
+    "uses",
+    "provides",
+    "to",
+    "with",
+    "transitive",
+    "static",
+]);
+
+const extractModule = (node: SyntaxNode, input: Input): ModuleInfo | null => {
+    const nameNode = findChild(node, (c) => c.name === "Identifier" || c.name === "ScopedIdentifier");
+    const body = findChild(node, (c) => c.name === "ModuleBody");
+    if (!nameNode || !body) {
+        return null;
+    }
+
+    const module: ModuleInfo = { name: input.read(nameNode.from, nameNode.to), exports: [], requiresTransitive: [] };
+    for (let directive = body.firstChild; directive; directive = directive.nextSibling) {
+        if (directive.name !== "ModuleDirective") {
+            continue;
+        }
+
+        // comments are nodes of their own and are neither keywords nor names
+        const keywords: string[] = [];
+        const names: string[] = [];
+        for (let child = directive.firstChild; child; child = child.nextSibling) {
+            const isName = child.name === "Identifier" || child.name === "ScopedIdentifier";
+            if (!isName && child.firstChild) {
+                continue;
+            }
+
+            const text = input.read(child.from, child.to);
+            if (DIRECTIVE_KEYWORDS.has(text)) {
+                keywords.push(text);
+            } else if (isName) {
+                names.push(text);
+            }
+        }
+
+        if (keywords[0] === "exports" && names.length > 0) {
+            // qualified exports are only visible to the listed modules
+            if (!keywords.includes("to")) {
+                module.exports.push(names[0]);
+            }
+        } else if (keywords[0] === "requires" && keywords.includes("transitive") && names.length > 0) {
+            module.requiresTransitive.push(names[names.length - 1]);
+        }
+    }
+    return module;
+};
+
+// reuse is asked for every node below the top node, returning true skips processing it
+type ReuseHandler = (node: SyntaxNode, qualifiedPrefix: string) => boolean;
+
+// nodes between a type body and its members, the only other nodes a declarations walk enters
+const MEMBER_CONTAINERS = new Set(["EnumBodyDeclarations"]);
+
+const TYPE_DECLARATIONS = new Set([
+    "ClassDeclaration",
+    "InterfaceDeclaration",
+    "EnumDeclaration",
+    "AnnotationTypeDeclaration",
+    "ModuleDeclaration",
+    "RecordDeclaration",
+]);
+
+// whether a type declaration is nested in anything but the top node and the bodies of named types
+const isLocalType = (node: SyntaxNode): boolean => {
+    for (let parent = node.parent; parent?.parent; parent = parent.parent) {
+        if (TYPE_BODIES.has(parent.name)) {
+            // anonymous class bodies belong to an expression
+            if (!TYPE_DECLARATIONS.has(parent.parent.name)) {
+                return true;
+            }
+            parent = parent.parent;
+        } else if (!MEMBER_CONTAINERS.has(parent.name)) {
+            return true;
+        }
+    }
+    return false;
+};
+
+// a declarations walk only enters the top node and type bodies, not members other than nested types
+const walkUnit = (unit: CompilationUnit, reuse?: ReuseHandler, declarationsOnly = false) => {
+    const { tree, input } = unit;
 
     const processNode = (node: SyntaxNode, qualifiedPrefix: string) => {
+        if (reuse && node.parent && reuse(node, qualifiedPrefix)) {
+            return;
+        }
+
         if (node.name === "PackageDeclaration") {
             const nameNode = findChild(node, (c) => c.name === "Identifier" || c.name === "ScopedIdentifier");
             if (nameNode) {
-                unit.packageName = source.slice(nameNode.from, nameNode.to);
+                unit.packageName = input.read(nameNode.from, nameNode.to);
             }
         } else if (node.name === "ImportDeclaration") {
             const nameNode = findChild(node, (c) => c.name === "Identifier" || c.name === "ScopedIdentifier");
             if (nameNode) {
-                const importedName = source.slice(nameNode.from, nameNode.to);
+                const importedName = input.read(nameNode.from, nameNode.to);
                 if (importedName) {
                     unit.imports.push({
                         kind: findChild(node, (c) => c.name === "module")
@@ -95,20 +317,17 @@ export const parseUnit = (tree: Tree, source: string): CompilationUnit => {
                     });
                 }
             }
-        } else if (
-            node.name === "ClassDeclaration" ||
-            node.name === "InterfaceDeclaration" ||
-            node.name === "EnumDeclaration" ||
-            node.name === "AnnotationTypeDeclaration" ||
-            node.name === "ModuleDeclaration" ||
-            node.name === "RecordDeclaration"
-        ) {
+        } else if (TYPE_DECLARATIONS.has(node.name)) {
+            if (node.name === "ModuleDeclaration") {
+                unit.module = extractModule(node, input);
+            }
+
             const defNode = findChild(node, (c) => c.name === "Definition" || c.name === "Identifier");
             if (defNode) {
-                const name = source.slice(defNode.from, defNode.to);
+                const name = input.read(defNode.from, defNode.to);
                 const qualifiedName = qualifiedPrefix ? `${qualifiedPrefix}.${name}` : name;
-                const typeParameters = extractTypeParameters(node, source);
-                unit.types.push({
+                const typeParameters = extractTypeParameters(node, input);
+                const type: TypeInfo = {
                     kind:
                         node.name === "ClassDeclaration"
                             ? "class"
@@ -125,18 +344,17 @@ export const parseUnit = (tree: Tree, source: string): CompilationUnit => {
                     qualifiedName,
                     node,
                     typeParameters,
-                });
+                    superclass: null,
+                    interfaces: [],
+                    permits: [],
+                    local: isLocalType(node),
+                };
+                if (node.name !== "ModuleDeclaration" && node.name !== "AnnotationTypeDeclaration") {
+                    extractSupertypes(node, input, type);
+                }
+                unit.types.push(type);
 
-                const classBody = findChild(
-                    node,
-                    (c) =>
-                        c.name === "ClassBody" ||
-                        c.name === "InterfaceBody" ||
-                        c.name === "AnnotationTypeBody" ||
-                        c.name === "ModuleBody" ||
-                        c.name === "EnumBody" ||
-                        c.name === "RecordBody"
-                );
+                const classBody = findChild(node, (c) => TYPE_BODIES.has(c.name));
                 if (classBody) {
                     let child = classBody.firstChild;
                     while (child) {
@@ -145,7 +363,7 @@ export const parseUnit = (tree: Tree, source: string): CompilationUnit => {
                     }
                 }
             }
-        } else {
+        } else if (!declarationsOnly || !node.parent || MEMBER_CONTAINERS.has(node.name)) {
             let child = node.firstChild;
             while (child) {
                 processNode(child, qualifiedPrefix);
@@ -155,6 +373,235 @@ export const parseUnit = (tree: Tree, source: string): CompilationUnit => {
     };
 
     processNode(tree.topNode, "");
+};
+
+const indexDeclaredTypes = (unit: CompilationUnit): Map<string, TypeInfo[]> => {
+    const declaredTypes = new Map<string, TypeInfo[]>();
+    const prefix = unit.packageName ? `${unit.packageName}.` : "";
+    const add = (key: string, type: TypeInfo) => {
+        const candidates = declaredTypes.get(key);
+        if (!candidates) {
+            declaredTypes.set(key, [type]);
+        } else if (candidates[candidates.length - 1] !== type) {
+            candidates.push(type);
+        }
+    };
+
+    for (const type of unit.types) {
+        add(type.name, type);
+        add(type.qualifiedName, type);
+        add(prefix + type.qualifiedName, type);
+    }
+    return declaredTypes;
+};
+
+/**
+ * Parses a Java compilation unit from a syntax tree and source code.
+ *
+ * This expects a `@lezer/java` parsed tree.
+ *
+ * @param tree - The syntax tree of the Java source file.
+ * @param source - The source code of the Java file, as a string or a Lezer input, e.g. over a rope.
+ * @returns The parsed compilation unit information.
+ */
+export const parseUnit = (tree: Tree, source: string | Input): CompilationUnit => {
+    const observer = getAnalysisObserver();
+    const start = observer?.phase ? performance.now() : 0;
+    const unit = createUnit(tree, source);
+
+    walkUnit(unit);
+    observer?.phase?.("extract", start, performance.now(), countNodes(tree));
+    return unit;
+};
+
+/**
+ * Parses the declarations of a Java compilation unit from a syntax tree and source code.
+ *
+ * The package, imports and types are the ones {@link parseUnit} finds, except for types it finds within members,
+ * i.e. local classes and members of anonymous classes, as the walk doesn't enter members other than nested types.
+ *
+ * @param tree - The syntax tree of the Java source file, e.g. of the source blanked out by `stripBodies`.
+ * @param source - The source code of the Java file, as a string or a Lezer input, e.g. over a rope.
+ * @returns The declaration-only compilation unit information.
+ */
+export const parseUnitDeclarations = (tree: Tree, source: string | Input): CompilationUnit => {
+    const observer = getAnalysisObserver();
+    const start = observer?.phase ? performance.now() : 0;
+    const unit = createUnit(tree, source);
 
+    walkUnit(unit, undefined, true);
+    observer?.phase?.("extract", start, performance.now(), countNodes(tree));
     return unit;
 };
+
+// finds the node with the exact span and name, if the tree has one
+const findNode = (tree: Tree, from: number, to: number, name: string): SyntaxNode | null => {
+    for (let node = tree.resolve(from, 1); node && node.from === from && node.to <= to; node = node.parent) {
+        if (node.to === to && node.name === name) {
+            return node;
+        }
+    }
+
+    return null;
+};
+
+// index of the first entry starting at or after the offset, entries are in document order
+const lowerBound = (entries: { node: SyntaxNode }[], offset: number): number => {
+    let low = 0;
+    let high = entries.length;
+    while (low < high) {
+        const mid = (low + high) >>> 1;
+        if (entries[mid].node.from < offset) {
+            low = mid + 1;
+        } else {
+            high = mid;
+        }
+    }
+    return low;
+};
+
+// the offset delta of a node from the previous tree, or null if it touches a change or wasn't in the previous tree
+const unchangedDelta = (prevTree: Tree, changes: readonly ChangedRange[], node: SyntaxNode): number | null => {
+    // the node must not touch any change, the offset delta comes from the changes before it
+    let delta = 0;
+    for (const change of changes) {
+        if (change.fromB > node.to) {
+            break;
+        }
+        if (change.toB >= node.from) {
+            return null;
+        }
+
+        delta += change.toB - change.fromB - (change.toA - change.fromA);
+    }
+
+    // the same text must have produced the same node in the previous tree, otherwise its context changed
+    return findNode(prevTree, node.from - delta, node.to - delta, node.name) ? delta : null;
+};
+
+const reuseEntries = (
+    prev: CompilationUnit,
+    next: CompilationUnit,
+    changes: readonly ChangedRange[],
+    node: SyntaxNode,
+    qualifiedPrefix: string,
+    movedTypes: Map<TypeInfo, TypeInfo> | null
+): boolean => {
+    if (node.name === "PackageDeclaration" || node.name === "ModuleDeclaration") {
+        // not entries, extracted anew
+        return false;
+    }
+
+    const delta = unchangedDelta(prev.tree, changes, node);
+    if (delta === null) {
+        return false;
+    }
+
+    const from = node.from - delta;
+    const to = node.to - delta;
+
+    const imports: ImportInfo[] = [];
+    for (let i = lowerBound(prev.imports, from); i < prev.imports.length && prev.imports[i].node.from < to; i++) {
+        const imp = prev.imports[i];
+        const impNode =
+            imp.node.to <= to && findNode(next.tree, imp.node.from + delta, imp.node.to + delta, imp.node.name);
+        if (!impNode) {
+            return false;
+        }
+
+        imports.push({ ...imp, node: impNode });
+    }
+
+    // the first type in the span is the outermost one, every other type in it shares its prefix
+    let prevPrefix: string | null = null;
+    const types: TypeInfo[] = [];
+    const moved: [TypeInfo, TypeInfo][] = [];
+    for (let i = lowerBound(prev.types, from); i < prev.types.length && prev.types[i].node.from < to; i++) {
+        const type = prev.types[i];
+        const typeNode =
+            type.node.to <= to && findNode(next.tree, type.node.from + delta, type.node.to + delta, type.node.name);
+        if (!typeNode) {
+            return false;
+        }
+
+        if (prevPrefix === null) {
+            prevPrefix = type.qualifiedName.slice(0, Math.max(0, type.qualifiedName.length - type.name.length - 1));
+        }
+
+        // supertypes are within the type's span, so the unchanged text produced them again too
+        const moveRef = (ref: LocalTypeReference): LocalTypeReference => ({
+            ...ref,
+            node: findNode(next.tree, ref.node.from + delta, ref.node.to + delta, ref.node.name),
+        });
+        const superclass = type.superclass && moveRef(type.superclass);
+        const interfaces = type.interfaces.map(moveRef);
+        const permits = type.permits.map(moveRef);
+        if (superclass?.node === null || [...interfaces, ...permits].some((ref) => !ref.node)) {
+            return false;
+        }
+
+        const relativeName = prevPrefix ? type.qualifiedName.slice(prevPrefix.length + 1) : type.qualifiedName;
+        const qualifiedName = qualifiedPrefix ? `${qualifiedPrefix}.${relativeName}` : relativeName;
+        // the unchanged node may have moved into a method or out of one
+        const local = isLocalType(typeNode);
+        // a new entry even if nothing moved, so that its nodes belong to the new tree
+        const nextType = { ...type, qualifiedName, node: typeNode, superclass, interfaces, permits, local };
+        types.push(nextType);
+        moved.push([type, nextType]);
+    }
+
+    next.imports.push(...imports);
+    next.types.push(...types);
+    for (const [type, nextType] of moved) {
+        movedTypes?.set(type, nextType);
+    }
+    return true;
+};
+
+/**
+ * Updates a compilation unit after an edit, reparsing incrementally.
+ *
+ * The previous tree is reused through `TreeFragment`s, and import and type entries of syntax nodes
+ * that don't touch any of the changes are carried over instead of being extracted again.
+ * Carried over entries are new objects with nodes of the new tree. If the previous unit's scopes were built,
+ * the scopes of unchanged declarations and blocks are carried over when the new unit's scopes are built,
+ * as the same objects where they declare no types.
+ * The previous unit is left untouched.
+ *
+ * @param unit - The compilation unit before the edit.
+ * @param changes - The changed ranges, sorted and non-overlapping, as in `TreeFragment.applyChanges`.
+ * @param source - The source code of the Java file after the edit, as a string or a Lezer input.
+ * @param parser - The parser that produced the unit's tree, usually `@lezer/java`'s.
+ * @returns The updated compilation unit information.
+ */
+export const updateUnit = (
+    unit: CompilationUnit,
+    changes: readonly ChangedRange[],
+    source: string | Input,
+    parser: Parser
+): CompilationUnit => {
+    const observer = getAnalysisObserver();
+    const start = observer?.phase ? performance.now() : 0;
+    const fragments = TreeFragment.applyChanges(TreeFragment.addTree(unit.tree), changes);
+    const tree = parser.parse(source, fragments);
+    const parsed = observer?.phase ? performance.now() : 0;
+    // counted once for both phases
+    const nodes = observer?.phase ? countNodes(tree) : 0;
+    observer?.phase?.("parse", start, parsed, nodes);
+
+    const extractStart = observer?.phase ? performance.now() : 0;
+    // scopes are carried over when they're built, if the previous unit's were
+    const prevScope = builtScopes.get(unit);
+    const movedTypes = prevScope ? new Map<TypeInfo, TypeInfo>() : null;
+    const prevTree = unit.tree;
+    const prev: PreviousScopes | undefined = prevScope && {
+        scope: prevScope,
+        types: movedTypes,
+        delta: (node) => unchangedDelta(prevTree, changes, node),
+    };
+
+    const next = createUnit(tree, source, (updated) => buildScopes(updated, prev));
+    walkUnit(next, (node, qualifiedPrefix) => reuseEntries(unit, next, changes, node, qualifiedPrefix, movedTypes));
+    observer?.phase?.("extract", extractStart, performance.now(), nodes);
+    return next;
+};
@@ -0,0 +1,69 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { createTypeReferenceResolver } from "./resolver.js";
+import { parseUnit } from "./unit.js";
+import { createUsageIndex } from "./usages.js";
+
+const parse = (source: string) => parseUnit(parser.parse(source), source);
+
+describe("Usage Index", () => {
+    const externalRefs = [
+        { name: "List", qualifiedName: "java.util.List", packageName: "java.util", moduleName: "java.base" },
+        { name: "Map", qualifiedName: "java.util.Map", packageName: "java.util", moduleName: "java.base" },
+    ];
+    const firstSource = `package test;
+
+import java.util.List;
+import static java.util.Map.entry;
+
+public class First {
+  List<First> items;
+  List<String> names;
+}`;
+    const secondSource = `package test;
+
+import java.util.*;
+import static java.util.Map.*;
+
+public class Second {
+  Map<String, List<First>> map;
+}`;
+    const first = parse(firstSource);
+    const second = parse(secondSource);
+
+    const index = createUsageIndex();
+    index.set("First.java", first, createTypeReferenceResolver(first, externalRefs).resolveAll());
+    index.set("Second.java", second, createTypeReferenceResolver(second, externalRefs).resolveAll());
+
+    it("should find resolved references by qualified name", () => {
+        const usages = index.usages("java.util.List");
+
+        expect(usages.map((u) => u.unitId)).to.deep.equal(["First.java", "First.java", "Second.java"]);
+        expect(firstSource.slice(usages[0].from, usages[0].to)).to.equal("List");
+        expect(usages[0].from).to.be.lessThan(usages[1].from);
+        expect(index.usages("java.util.Set")).to.have.lengthOf(0);
+    });
+
+    it("should find import declarations naming a type", () => {
+        const importers = index.importers("java.util.Map");
+
+        expect(importers.map((i) => i.unitId)).to.deep.equal(["First.java", "Second.java"]);
+        expect(firstSource.slice(importers[0].from, importers[0].to)).to.equal("import static java.util.Map.entry;");
+        expect(index.importers("java.util.List").map((i) => i.unitId)).to.deep.equal(["First.java"]);
+        expect(index.importers("java.util").map((i) => i.unitId)).to.deep.equal(["Second.java"]);
+    });
+
+    it("should replace and delete the entries of a unit", () => {
+        const updated = createUsageIndex();
+        updated.set("First.java", first, createTypeReferenceResolver(first, externalRefs).resolveAll());
+        updated.set("First.java", second, []);
+
+        expect(updated.usages("java.util.List")).to.have.lengthOf(0);
+        expect(updated.importers("java.util.List")).to.have.lengthOf(0);
+        expect(updated.importers("java.util.Map")).to.have.lengthOf(1);
+
+        expect(updated.delete("First.java")).to.be.true;
+        expect(updated.delete("First.java")).to.be.false;
+        expect(updated.importers("java.util.Map")).to.have.lengthOf(0);
+    });
+});
@@ -0,0 +1,170 @@
+import { ResolvedType } from "./resolver.js";
+import { CompilationUnit, ImportInfo } from "./unit.js";
+
+/**
+ * A span in a compilation unit.
+ */
+export interface ReferenceLocation {
+    /** The unit identifier, e.g. a file path or URI. */
+    unitId: string;
+    from: number;
+    to: number;
+}
+
+/**
+ * Inverted index from qualified type names to the places referencing them.
+ */
+export interface UsageIndex {
+    /**
+     * Finds the resolved references to a type.
+     *
+     * @param qualifiedName - The fully qualified type name
+     * @returns The reference locations, grouped by unit in the order units were indexed, in document order per unit
+     */
+    usages(qualifiedName: string): ReferenceLocation[];
+
+    /**
+     * Finds the import declarations naming a type,
+     * i.e. type imports of it and static or on-demand imports of its members.
+     *
+     * On-demand imports of a package are found by the package name, references resolved through them by {@link usages}.
+     *
+     * @param qualifiedName - The fully qualified type name
+     * @returns The import declaration locations
+     */
+    importers(qualifiedName: string): ReferenceLocation[];
+}
+
+/**
+ * Usage index that can be updated one unit at a time.
+ */
+export interface MutableUsageIndex extends UsageIndex {
+    /**
+     * Indexes a unit, replacing the entries of any unit with the same identifier.
+     *
+     * @param unitId - The unit identifier
+     * @param unit - The compilation unit, for its imports
+     * @param resolved - The resolved references of the unit, e.g. from {@link TypeReferenceResolver.resolveAll}
+     */
+    set(unitId: string, unit: CompilationUnit, resolved: Iterable<ResolvedType>): void;
+
+    /**
+     * Removes the entries of a unit.
+     *
+     * @param unitId - The unit identifier
+     * @returns Whether the unit was indexed
+     */
+    delete(unitId: string): boolean;
+}
+
+// qualified name -> unit -> flat from, to pairs
+type Postings = Map<string, Map<string, number[]>>;
+
+const addPosting = (postings: Postings, name: string, unitId: string, from: number, to: number) => {
+    let units = postings.get(name);
+    if (!units) {
+        units = new Map();
+        postings.set(name, units);
+    }
+
+    const spans = units.get(unitId);
+    if (spans) {
+        spans.push(from, to);
+    } else {
+        units.set(unitId, [from, to]);
+    }
+};
+
+const deletePostings = (postings: Postings, names: Iterable<string>, unitId: string) => {
+    for (const name of names) {
+        const units = postings.get(name);
+        if (units?.delete(unitId) && units.size === 0) {
+            postings.delete(name);
+        }
+    }
+};
+
+const locations = (postings: Postings, name: string): ReferenceLocation[] => {
+    const result: ReferenceLocation[] = [];
+    for (const [unitId, spans] of postings.get(name) ?? []) {
+        for (let i = 0; i < spans.length; i += 2) {
+            result.push({ unitId, from: spans[i], to: spans[i + 1] });
+        }
+    }
+    return result;
+};
+
+// the type an import declaration names: the imported type, or the type whose members are imported
+const importKey = (imp: ImportInfo): string | null => {
+    switch (imp.kind) {
+        case "type":
+        case "wildcard":
+            // on-demand imports name a package or a type, both are keyed by that name
+            return imp.importedName;
+        case "static": {
+            if (imp.node.getChild("Asterisk")) {
+                return imp.importedName;
+            }
+
+            const index = imp.importedName.lastIndexOf(".");
+            return index === -1 ? null : imp.importedName.slice(0, index);
+        }
+    }
+
+    return null;
+};
+
+/**
+ * Creates an empty usage index.
+ *
+ * @returns The usage index
+ */
+export const createUsageIndex = (): MutableUsageIndex => {
+    const references: Postings = new Map();
+    const imports: Postings = new Map();
+    // unit -> names it has postings under, for removal
+    const referenceNames = new Map<string, Set<string>>();
+    const importNames = new Map<string, Set<string>>();
+
+    const remove = (unitId: string): boolean => {
+        const names = referenceNames.get(unitId);
+        if (!names) {
+            return false;
+        }
+
+        deletePostings(references, names, unitId);
+        deletePostings(imports, importNames.get(unitId), unitId);
+        referenceNames.delete(unitId);
+        importNames.delete(unitId);
+        return true;
+    };
+
+    return {
+        usages: (qualifiedName: string) => locations(references, qualifiedName),
+        importers: (qualifiedName: string) => locations(imports, qualifiedName),
+        set(unitId: string, unit: CompilationUnit, resolved: Iterable<ResolvedType>) {
+            remove(unitId);
+
+            const names = new Set<string>();
+            for (const type of resolved) {
+                if (type.qualifiedName) {
+                    names.add(type.qualifiedName);
+                    addPosting(references, type.qualifiedName, unitId, type.ref.node.from, type.ref.node.to);
+                }
+            }
+
+            const imported = new Set<string>();
+            for (const imp of unit.imports) {
+                const name = importKey(imp);
+                if (name) {
+                    imported.add(name);
+                    addPosting(imports, name, unitId, imp.node.from, imp.node.to);
+                }
+            }
+
+            referenceNames.set(unitId, names);
+            importNames.set(unitId, imported);
+        },
+        delete: remove,
+    };
+};
@@ -0,0 +1,205 @@
+import { parser } from "@run-slicer/lezer-java";
+import { expect } from "chai";
+import { createExternalSymbolIndex } from "./symbol-index.js";
+import { parseUnit } from "./unit.js";
+import { createWorkspace, unitTypeReferences } from "./workspace.js";
+
+const parse = (source: string) => parseUnit(parser.parse(source), source);
+
+describe("Workspace", () => {
+    const helperSource = `package test;
+
+public class Helper {
+  public static class Nested {}
+}`;
+    const mainSource = `package test;
+
+import other.*;
+
+public class Main {
+  private Helper helper;
+  private Helper.Nested nested;
+  private Util util;
+  private String name;
+}`;
+    const utilSource = `package other;
+
+public class Util {}`;
+
+    describe("unitTypeReferences", () => {
+        it("should convert declared types", () => {
+            const refs = unitTypeReferences(parse(helperSource));
+
+            expect(refs).to.deep.equal([
+                { name: "Helper", qualifiedName: "test.Helper", packageName: "test", moduleName: null },
+                { name: "Helper.Nested", qualifiedName: "test.Helper.Nested", packageName: "test", moduleName: null },
+            ]);
+        });
+
+        it("should skip module declarations", () => {
+            const refs = unitTypeReferences(parse("module com.example {}"));
+
+            expect(refs).to.have.lengthOf(0);
+        });
+
+        it("should skip local types", () => {
+            const refs = unitTypeReferences(
+                parse(`package test;
+
+public class Outer {
+  enum Kind { A; static class Member {} }
+
+  void run() {
+    class Local {}
+    new Object() { class Anonymous {} };
+  }
+}`)
+            );
+
+            expect(refs.map((ref) => ref.name)).to.deep.equal(["Outer", "Outer.Kind", "Outer.Kind.Member"]);
+        });
+    });
+
+    describe("resolution", () => {
+        const workspace = createWorkspace([
+            { name: "String", qualifiedName: "java.lang.String", packageName: "java.lang", moduleName: "java.base" },
+        ]);
+        workspace.set("test/Helper.java", parse(helperSource));
+        workspace.set("test/Main.java", parse(mainSource));
+        workspace.set("other/Util.java", parse(utilSource));
+
+        it("should share one symbol table", () => {
+            expect(workspace.symbols.size).to.equal(5);
+            expect(workspace.symbols.byQualifiedName("other.Util")?.name).to.equal("Util");
+        });
+
+        it("should resolve across units", () => {
+            const resolver = workspace.createResolver("test/Main.java");
+
+            const helper = resolver?.resolveAt(mainSource.indexOf("Helper helper") + 1);
+            expect(helper?.kind).to.equal("imported");
+            expect(helper?.qualifiedName).to.equal("test.Helper");
+
+            const util = resolver?.resolveAt(mainSource.indexOf("Util util") + 1);
+            expect(util?.qualifiedName).to.equal("other.Util");
+
+            const string = resolver?.resolveAt(mainSource.indexOf("String name") + 1);
+            expect(string?.qualifiedName).to.equal("java.lang.String");
+        });
+
+        it("should return null for unknown units", () => {
+            expect(workspace.createResolver("missing.java")).to.be.null;
+        });
+
+        it("should look up units before external references of either form", () => {
+            const external = {
+                name: "Helper",
+                qualifiedName: "test.Helper",
+                packageName: "test",
+                moduleName: "test.lib",
+            };
+
+            const workspaces = [createWorkspace([external]), createWorkspace(createExternalSymbolIndex([external]))];
+            for (const shadowing of workspaces) {
+                shadowing.set("test/Helper.java", parse(helperSource));
+                expect(shadowing.symbols.byQualifiedName("test.Helper")?.moduleName).to.be.null;
+                expect(shadowing.symbols.byPackage("test", "Helper")?.moduleName).to.be.null;
+
+                shadowing.delete("test/Helper.java");
+                expect(shadowing.symbols.byPackage("test", "Helper")?.moduleName).to.equal("test.lib");
+            }
+        });
+    });
+
+    describe("updates", () => {
+        it("should replace the symbols of a unit", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Helper.java", parse(helperSource));
+            workspace.set("test/Helper.java", parse("package test;\n\npublic class Renamed {}"));
+
+            expect(workspace.units.size).to.equal(1);
+            expect(workspace.symbols.size).to.equal(1);
+            expect(workspace.symbols.byQualifiedName("test.Helper")).to.be.null;
+            expect(workspace.symbols.byQualifiedName("test.Renamed")).to.not.be.null;
+        });
+
+        it("should remove the symbols of a unit", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Helper.java", parse(helperSource));
+            workspace.set("test/Main.java", parse(mainSource));
+
+            expect(workspace.delete("test/Helper.java")).to.be.true;
+            expect(workspace.delete("test/Helper.java")).to.be.false;
+            expect(workspace.symbols.byPackage("test", "Helper")).to.be.null;
+
+            const resolver = workspace.createResolver("test/Main.java");
+            expect(resolver?.resolveAt(mainSource.indexOf("Helper helper") + 1)).to.be.null;
+        });
+    });
+
+    describe("usages", () => {
+        it("should find references across units", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Helper.java", parse(helperSource));
+            workspace.set("test/Main.java", parse(mainSource));
+
+            const usages = workspace.usages.usages("test.Helper");
+            expect(usages.map((u) => u.unitId)).to.include("test/Main.java");
+            expect(usages.map((u) => mainSource.slice(u.from, u.to))).to.include("Helper");
+            expect(workspace.usages.importers("other")).to.have.lengthOf(1);
+        });
+
+        it("should pick up types declared after their users", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Main.java", parse(mainSource));
+            expect(workspace.usages.usages("other.Util")).to.have.lengthOf(0);
+
+            workspace.set("other/Util.java", parse(utilSource));
+            expect(workspace.usages.usages("other.Util").map((u) => u.unitId)).to.deep.equal(["test/Main.java"]);
+
+            workspace.delete("other/Util.java");
+            expect(workspace.usages.usages("other.Util")).to.have.lengthOf(0);
+        });
+
+        it("should update the usages of an edited unit", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Helper.java", parse(helperSource));
+            workspace.set("test/Main.java", parse(mainSource));
+            expect(workspace.usages.usages("test.Helper.Nested")).to.have.lengthOf(1);
+
+            workspace.set("test/Main.java", parse(mainSource.replace("private Helper.Nested nested;", "")));
+            expect(workspace.usages.usages("test.Helper.Nested")).to.have.lengthOf(0);
+            expect(workspace.usages.usages("test.Helper").map((u) => u.unitId)).to.include("test/Main.java");
+        });
+    });
+
+    describe("dependencies", () => {
+        it("should report the units affected by a change", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Helper.java", parse(helperSource));
+            workspace.set("test/Main.java", parse(mainSource));
+            workspace.set("other/Util.java", parse(utilSource));
+            workspace.createResolver("test/Main.java").resolveAll();
+
+            // an edit keeping the declared types affects nobody else
+            const edited = parse(helperSource.replace("{}", "{ int x; }"));
+            expect(workspace.set("test/Helper.java", edited)).to.deep.equal([]);
+
+            // a new type Main looked up through its wildcard import
+            const added = parse("package other;\n\npublic class Helper {}");
+            expect(workspace.set("other/Helper.java", added)).to.deep.equal(["test/Main.java"]);
+
+            // a type nobody looked up
+            expect(workspace.set("other/Unused.java", parse("package other;\n\nclass Unused {}"))).to.deep.equal([]);
+        });
+
+        it("should track the lookups of the usage index", () => {
+            const workspace = createWorkspace();
+            workspace.set("test/Main.java", parse(mainSource));
+            workspace.usages.usages("test.Helper");
+
+            const helper = unitTypeReferences(parse(helperSource));
+            expect(Array.from(workspace.dependencies.dependents(helper))).to.deep.equal(["test/Main.java"]);
+        });
+    });
+});
@@ -0,0 +1,344 @@
+import { createDependencyGraph, DependencyGraph } from "./dependencies.js";
+import { createTypeHierarchy, resolveHierarchy, TypeHierarchy } from "./hierarchy.js";
+import { createModuleGraph, ModuleGraph, ModuleInfo } from "./modules.js";
+import { createTypeReferenceResolver, ExternalTypeReference, TypeReferenceResolver } from "./resolver.js";
+import { LazySymbolIndex } from "./source-roots.js";
+import { cachePackagesLookup, createExternalSymbolIndex, ExternalSymbolIndex } from "./symbol-index.js";
+import { CompilationUnit, TypeInfo } from "./unit.js";
+import { createUsageIndex, UsageIndex } from "./usages.js";
+
+/**
+ * Converts the type declarations of a compilation unit into external type references.
+ *
+ * The reference name is the type's qualified name without the package, i.e. `Outer.Inner` for nested types,
+ * so that other units of the same package don't see nested types by their simple name.
+ * Module declarations are not types and are skipped, as are local types, which no other unit can name.
+ *
+ * @param unit - The compilation unit, or a summary of it
+ * @param moduleName - The module the unit belongs to, if known
+ * @returns The external type references declared by the unit
+ */
+export const unitTypeReferences = (
+    unit: { packageName: string | null; types: Pick<TypeInfo, "kind" | "qualifiedName" | "local">[] },
+    moduleName: string | null = null
+): ExternalTypeReference[] => {
+    const prefix = unit.packageName ? `${unit.packageName}.` : "";
+    return unit.types
+        .filter((type) => type.kind !== "module" && !type.local)
+        .map((type) => ({
+            name: type.qualifiedName,
+            qualifiedName: prefix + type.qualifiedName,
+            packageName: unit.packageName ?? "",
+            moduleName,
+        }));
+};
+
+/**
+ * A set of compilation units sharing one symbol table.
+ *
+ * The symbol table holds the external references the workspace was created with,
+ * and the types declared by every unit in it, kept up to date as units are added, replaced or removed.
+ */
+export interface Workspace {
+    /** The shared symbol table, for resolvers created outside the workspace. */
+    readonly symbols: ExternalSymbolIndex;
+
+    /** The module exports, of the modules the workspace was created with and of `module-info` units in it. */
+    readonly modules: ModuleGraph;
+
+    /** The units in the workspace, by their identifier. */
+    readonly units: ReadonlyMap<string, CompilationUnit>;
+
+    /**
+     * The references to workspace and external types from every unit.
+     *
+     * Units added or affected by a change are resolved again on the next query, the rest are answered from the index.
+     * Adding units stays as cheap as indexing their declarations, and the first query after adding a whole project
+     * pays for resolving all of it, which a caller can do ahead of time with any query, e.g. once indexing finished.
+     */
+    readonly usages: UsageIndex;
+
+    /**
+     * The symbol lookups made by the workspace's resolvers, by unit.
+     *
+     * Only resolvers from {@link createResolver} and the usage index are tracked.
+     */
+    readonly dependencies: DependencyGraph;
+
+    /**
+     * The supertypes of the types declared by every unit.
+     *
+     * Units added or affected by a change have their supertypes resolved again on the next query,
+     * transitive queries are cached until a change touches the types they went through.
+     */
+    readonly hierarchy: TypeHierarchy;
+
+    /**
+     * Adds a compilation unit to the workspace, replacing any unit with the same identifier.
+     *
+     * @param id - The unit identifier, e.g. a file path or URI
+     * @param unit - The compilation unit
+     * @returns The identifiers of other units whose resolutions may have changed,
+     *          because they looked up a type the unit declared before or declares now,
+     *          or they import a module whose exports go through the unit's changed module declaration
+     */
+    set(id: string, unit: CompilationUnit): string[];
+
+    /**
+     * Removes a compilation unit from the workspace.
+     *
+     * Units that looked up its types can be found with {@link dependencies} beforehand.
+     *
+     * @param id - The unit identifier
+     * @returns Whether a unit was removed
+     */
+    delete(id: string): boolean;
+
+    /**
+     * Reloads a package of the external references after its files changed,
+     * if the workspace was created over a {@link LazySymbolIndex}.
+     *
+     * @param packageName - The package name
+     * @returns The identifiers of units whose resolutions may have changed,
+     *          because they looked up a type the package declared before or declares now
+     */
+    invalidate(packageName: string): string[];
+
+    /**
+     * Creates a type reference resolver for a unit in the workspace, backed by the shared symbol table.
+     *
+     * @param id - The unit identifier
+     * @returns The resolver or null, if there is no such unit
+     */
+    createResolver(id: string): TypeReferenceResolver | null;
+}
+
+const isSymbolIndex = (value: Iterable<ExternalTypeReference> | ExternalSymbolIndex): value is ExternalSymbolIndex =>
+    "byQualifiedName" in value;
+
+const isLazySymbolIndex = (index: ExternalSymbolIndex): index is LazySymbolIndex => "loadPackage" in index;
+
+// looks up in the first index, then the second
+const layerSymbolIndexes = (first: ExternalSymbolIndex, second: ExternalSymbolIndex): ExternalSymbolIndex => {
+    const layered: ExternalSymbolIndex = {
+        get size() {
+            return first.size + second.size;
+        },
+        get version() {
+            // both only grow, so the sum changes whenever either does
+            return first.version + second.version;
+        },
+        byQualifiedName: (qualifiedName: string) =>
+            first.byQualifiedName(qualifiedName) ?? second.byQualifiedName(qualifiedName),
+        byPackage: (packageName: string, name: string) =>
+            first.byPackage(packageName, name) ?? second.byPackage(packageName, name),
+        // package by package, so a later package of the first index doesn't shadow an earlier one of the second
+        byPackages: (packages: readonly string[], name: string) => byPackages(packages, name),
+        byModule: (moduleName: string, name: string) =>
+            first.byModule(moduleName, name) ?? second.byModule(moduleName, name),
+    };
+
+    const byPackages = cachePackagesLookup(layered);
+    return layered;
+};
+
+// the references declared before or after a change but not both, by qualified name
+const changedTypes = (prevRefs: readonly ExternalTypeReference[], refs: readonly ExternalTypeReference[]) => {
+    const prevNames = new Set(prevRefs.map((ref) => ref.qualifiedName));
+    const names = new Set(refs.map((ref) => ref.qualifiedName));
+    return [
+        ...prevRefs.filter((ref) => !names.has(ref.qualifiedName)),
+        ...refs.filter((ref) => !prevNames.has(ref.qualifiedName)),
+    ];
+};
+
+const sameNames = (a: string[], b: string[]) => a.length === b.length && a.every((name, i) => name === b[i]);
+
+const sameModule = (a: ModuleInfo, b: ModuleInfo) =>
+    a.name === b.name && sameNames(a.exports, b.exports) && sameNames(a.requiresTransitive, b.requiresTransitive);
+
+/**
+ * Creates an empty workspace.
+ *
+ * @param externalRefs - Optional references outside of the workspace, e.g. the JDK and the classpath,
+ *                       or an index such as a {@link createLazySymbolIndex} over the project's source roots.
+ *                       They are looked up after the types declared by workspace units, so open units shadow them.
+ * @param externalModules - Optional modules outside of the workspace, e.g. from {@link readModuleInfo}
+ * @returns The workspace
+ */
+export const createWorkspace = (
+    externalRefs: Iterable<ExternalTypeReference> | ExternalSymbolIndex = [],
+    externalModules: Iterable<ModuleInfo> = []
+): Workspace => {
+    const local = createExternalSymbolIndex();
+    const external = isSymbolIndex(externalRefs) ? externalRefs : createExternalSymbolIndex(externalRefs);
+    const symbols = layerSymbolIndexes(local, external);
+    const modules = createModuleGraph(externalModules);
+    const units = new Map<string, CompilationUnit>();
+    const declared = new Map<string, ExternalTypeReference[]>();
+    const dependencies = createDependencyGraph();
+
+    // resolves a unit recording its lookups
+    const createTrackedResolver = (id: string, unit: CompilationUnit) =>
+        createTypeReferenceResolver(unit, dependencies.track(id, symbols), dependencies.trackModules(id, modules));
+
+    // units whose usages need to be resolved again
+    const usageIndex = createUsageIndex();
+    const staleUsages = new Set<string>();
+    const refreshUsages = () => {
+        for (const id of staleUsages) {
+            const unit = units.get(id);
+            const resolver = createTrackedResolver(id, unit);
+            usageIndex.set(id, unit, resolver.resolveAll());
+        }
+        staleUsages.clear();
+    };
+
+    // units whose supertypes need to be resolved again
+    const hierarchy = createTypeHierarchy();
+    const staleHierarchy = new Set<string>();
+    const refreshHierarchy = () => {
+        for (const id of staleHierarchy) {
+            hierarchy.set(
+                id,
+                resolveHierarchy(units.get(id), dependencies.track(id, symbols), dependencies.trackModules(id, modules))
+            );
+        }
+        staleHierarchy.clear();
+    };
+
+    // other units that looked up any of the changed names, found or not, or the exports of any of the changed modules
+    const invalidate = (
+        id: string | null,
+        changedRefs: ExternalTypeReference[],
+        changedModules: string[]
+    ): string[] => {
+        const affected = changedRefs.length > 0 ? dependencies.dependents(changedRefs) : new Set<string>();
+        for (const unitId of dependencies.moduleDependents(changedModules)) {
+            affected.add(unitId);
+        }
+        affected.delete(id);
+        for (const affectedId of affected) {
+            staleUsages.add(affectedId);
+            staleHierarchy.add(affectedId);
+        }
+        return Array.from(affected);
+    };
+
+    // swaps a unit's module declaration in the graph,
+    // returning the modules whose exports went through it before or go through it now
+    const replaceModule = (prev: ModuleInfo | null, next: ModuleInfo | null): string[] => {
+        if (prev === next || (prev && next && sameModule(prev, next))) {
+            return [];
+        }
+
+        const changed = new Set<string>();
+        if (prev) {
+            for (const name of modules.dependentModules(prev.name)) {
+                changed.add(name);
+            }
+            modules.delete(prev.name);
+        }
+        if (next) {
+            modules.set(next);
+            for (const name of modules.dependentModules(next.name)) {
+                changed.add(name);
+            }
+        }
+        return Array.from(changed);
+    };
+
+    return {
+        symbols,
+        modules,
+        units,
+        dependencies,
+        usages: {
+            usages(qualifiedName: string) {
+                refreshUsages();
+                return usageIndex.usages(qualifiedName);
+            },
+            importers(qualifiedName: string) {
+                refreshUsages();
+                return usageIndex.importers(qualifiedName);
+            },
+        },
+        hierarchy: {
+            get version() {
+                refreshHierarchy();
+                return hierarchy.version;
+            },
+            type(qualifiedName: string) {
+                refreshHierarchy();
+                return hierarchy.type(qualifiedName);
+            },
+            supertypes(qualifiedName: string) {
+                refreshHierarchy();
+                return hierarchy.supertypes(qualifiedName);
+            },
+            subtypes(qualifiedName: string) {
+                refreshHierarchy();
+                return hierarchy.subtypes(qualifiedName);
+            },
+        },
+        set(id: string, unit: CompilationUnit) {
+            const changedModules = replaceModule(units.get(id)?.module ?? null, unit.module);
+            const prevRefs = declared.get(id) ?? [];
+            const refs = unitTypeReferences(unit);
+
+            for (const ref of prevRefs) {
+                local.delete(ref);
+            }
+            for (const ref of refs) {
+                local.add(ref);
+            }
+            declared.set(id, refs);
+            units.set(id, unit);
+
+            // the unit resolves anew, its previous lookups don't matter anymore
+            dependencies.delete(id);
+            staleUsages.add(id);
+            staleHierarchy.add(id);
+
+            // an edit that keeps the declared types only affects the unit itself
+            return invalidate(id, changedTypes(prevRefs, refs), changedModules);
+        },
+        delete(id: string) {
+            const refs = declared.get(id);
+            if (!refs) {
+                return false;
+            }
+
+            for (const ref of refs) {
+                local.delete(ref);
+            }
+            const changedModules = replaceModule(units.get(id).module, null);
+            declared.delete(id);
+            units.delete(id);
+
+            dependencies.delete(id);
+            usageIndex.delete(id);
+            staleUsages.delete(id);
+            hierarchy.delete(id);
+            staleHierarchy.delete(id);
+            invalidate(id, refs, changedModules);
+            return true;
+        },
+        invalidate(packageName: string) {
+            if (!isLazySymbolIndex(external)) {
+                return [];
+            }
+
+            const prevRefs = external.loadedPackages.has(packageName) ? external.loadPackage(packageName) : [];
+            // a package that wasn't looked up yet can't have changed any resolution
+            if (!external.invalidate(packageName)) {
+                return [];
+            }
+            return invalidate(null, changedTypes(prevRefs, external.loadPackage(packageName)), []);
+        },
+        createResolver(id: string) {
+            const unit = units.get(id);
+            return unit ? createTrackedResolver(id, unit) : null;
+        },
+    };
+};